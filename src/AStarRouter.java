@@ -0,0 +1,31 @@
+/**
+ * Finds shortest paths with the A* algorithm, the haversine distance from a node to the destination is used as the
+ * estimate of how far is left to travel. Since every edge of the RoadGraph is itself a haversine distance, the
+ * straight line distance never overestimates what remains, so the paths found have the same length as Dijkstra's
+ * while far fewer nodes are settled away from the destination.
+ * @author Jonathan Yin
+ *
+ */
+public class AStarRouter extends DijkstraRouter {
+
+	// Destination of the current search, cached so its coordinates are not looked up for every estimate.
+	private int destinationOrdinal = -1;
+	private double destinationLatitude;
+	private double destinationLongitude;
+
+	public AStarRouter(RoadGraph graph)
+	{
+		super(graph);
+	}
+
+	@Override
+	protected double estimate(int node, int target)
+	{
+		if (target != destinationOrdinal) {
+			destinationOrdinal = target;
+			destinationLatitude = graph.getLatitude(target);
+			destinationLongitude = graph.getLongitude(target);
+		}
+		return Node.distance(graph.getLatitude(node), graph.getLongitude(node), destinationLatitude, destinationLongitude);
+	}
+}
@@ -0,0 +1,402 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses a bzip2 stream, as written by the bzip2 tool and most OSM extract services. Blocks are decoded one at a
+ * time: the Huffman coded symbols are read into the block, the move-to-front and run length coding of the symbols are
+ * undone as they are read, and the Burrows-Wheeler transform is inverted lazily while the bytes of the block are
+ * handed out, with the initial run length coding undone on the way. The CRC of every block and of the whole stream is
+ * checked. Concatenated streams, as written by parallel compressors, are read one after another.
+ *
+ * Blocks using the obsolete randomised mode are rejected.
+ * @author Jonathan Yin
+ *
+ */
+public class BZip2InputStream extends InputStream {
+
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+	private static final long END_MAGIC = 0x177245385090L;
+	private static final int MAX_GROUPS = 6;
+	private static final int GROUP_SIZE = 50;
+	private static final int MAX_CODE_LENGTH = 20;
+	private static final int MAX_SELECTORS = 18002;
+	private static final int RUNA = 0;
+	private static final int RUNB = 1;
+	private static final int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i << 24;
+			for (int bit = 0; bit < 8; bit++)
+				crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+			CRC_TABLE[i] = crc;
+		}
+	}
+
+	private final InputStream in;
+	private final byte[] input = new byte[1 << 16];
+	private int inputPosition;
+	private int inputLength;
+	private long bits;
+	private int bitCount;
+
+	private int blockSize;
+	// The block after decoding: the low byte of each entry is a byte of the block, the rest links to the next one.
+	private int[] tt;
+	private int tPos;
+	private int blockRemaining;
+	private int blockCrc;
+	private int computedBlockCrc;
+	private int computedStreamCrc;
+	// State of the initial run length coding, four equal bytes are followed by the count of further repeats.
+	private int lastByte;
+	private int runLength;
+	private int repeat;
+	private boolean inBlock;
+	private boolean finished;
+
+	// Tables for decoding a block, kept between blocks.
+	private final int[] unzftab = new int[256];
+	private final int[] cftab = new int[257];
+	private final byte[] seqToUnseq = new byte[256];
+	private final byte[] selectors = new byte[MAX_SELECTORS];
+	private final int[][] limit = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+	private final int[][] base = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+	private final int[][] perm = new int[MAX_GROUPS][258];
+	private final int[] minLengths = new int[MAX_GROUPS];
+	private final int[] maxLengths = new int[MAX_GROUPS];
+
+	/**
+	 * Creates a stream decompressing another one.
+	 * @param in The compressed stream, starting with the "BZh" header.
+	 * @throws IOException If the stream can't be read or is not bzip2.
+	 */
+	public BZip2InputStream(InputStream in) throws IOException
+	{
+		this.in = in;
+		if (!readStreamHeader(true))
+			throw new IOException("Empty bzip2 stream");
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] single = new byte[1];
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		if (length == 0)
+			return 0;
+		int count = 0;
+		while (count < length) {
+			if (repeat > 0) {
+				bytes[offset + count++] = (byte) lastByte;
+				computedBlockCrc = (computedBlockCrc << 8) ^ CRC_TABLE[((computedBlockCrc >>> 24) ^ lastByte) & 0xFF];
+				repeat--;
+				continue;
+			}
+			if (blockRemaining == 0) {
+				if (!nextBlock())
+					break;
+				continue;
+			}
+			tPos = tt[tPos];
+			int b = tPos & 0xFF;
+			tPos >>>= 8;
+			blockRemaining--;
+			if (runLength == 4) {
+				repeat = b;
+				runLength = 0;
+				continue;
+			}
+			if (b == lastByte) {
+				runLength++;
+			} else {
+				lastByte = b;
+				runLength = 1;
+			}
+			bytes[offset + count++] = (byte) b;
+			computedBlockCrc = (computedBlockCrc << 8) ^ CRC_TABLE[((computedBlockCrc >>> 24) ^ b) & 0xFF];
+		}
+		return count == 0 ? -1 : count;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	/**
+	 * Finishes the current block and decodes the next one.
+	 * @return false at the end of the last stream.
+	 */
+	private boolean nextBlock() throws IOException
+	{
+		if (inBlock) {
+			if (~computedBlockCrc != blockCrc)
+				throw new IOException("bzip2 block CRC mismatch");
+			computedStreamCrc = ((computedStreamCrc << 1) | (computedStreamCrc >>> 31)) ^ blockCrc;
+			inBlock = false;
+		}
+		while (!finished) {
+			long magic = ((long) readBits(24) << 24) | readBits(24);
+			if (magic == BLOCK_MAGIC) {
+				decodeBlock();
+				return true;
+			}
+			if (magic != END_MAGIC)
+				throw new IOException("Bad bzip2 block header");
+			int streamCrc = readBits(32);
+			if (streamCrc != computedStreamCrc)
+				throw new IOException("bzip2 stream CRC mismatch");
+			// Streams end on a byte boundary, another one may follow.
+			bitCount = 0;
+			finished = !readStreamHeader(false);
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the "BZh" header and block size of a stream.
+	 * @param first true for the first stream, which has to be there.
+	 * @return false if the input ended instead.
+	 */
+	private boolean readStreamHeader(boolean first) throws IOException
+	{
+		int b = readByte();
+		if (b < 0 && !first)
+			return false;
+		if (b != 'B' || readByte() != 'Z' || readByte() != 'h')
+			throw new IOException("Not a bzip2 stream");
+		int level = readByte();
+		if (level < '1' || level > '9')
+			throw new IOException("Bad bzip2 block size");
+		int size = (level - '0') * 100000;
+		if (tt == null || size > blockSize)
+			tt = new int[size];
+		blockSize = size;
+		computedStreamCrc = 0;
+		return true;
+	}
+
+	private void decodeBlock() throws IOException
+	{
+		blockCrc = readBits(32);
+		if (readBits(1) != 0)
+			throw new IOException("Randomised bzip2 blocks are not supported");
+		int origPtr = readBits(24);
+
+		// Bytes used in the block, as a bitmap of bitmaps.
+		int used = 0;
+		int ranges = readBits(16);
+		for (int i = 0; i < 16; i++) {
+			if ((ranges & (0x8000 >>> i)) != 0) {
+				int mask = readBits(16);
+				for (int j = 0; j < 16; j++) {
+					if ((mask & (0x8000 >>> j)) != 0)
+						seqToUnseq[used++] = (byte) (i * 16 + j);
+				}
+			}
+		}
+		if (used == 0)
+			throw new IOException("bzip2 block uses no bytes");
+		int alphabetSize = used + 2;
+
+		// Which Huffman table codes each group of 50 symbols, move-to-front coded.
+		int groups = readBits(3);
+		int selectorCount = readBits(15);
+		if (groups < 2 || groups > MAX_GROUPS || selectorCount < 1)
+			throw new IOException("Bad bzip2 Huffman tables");
+		byte[] groupOrder = new byte[MAX_GROUPS];
+		for (int i = 0; i < groups; i++)
+			groupOrder[i] = (byte) i;
+		for (int i = 0; i < selectorCount; i++) {
+			int j = 0;
+			while (readBits(1) != 0) {
+				if (++j >= groups)
+					throw new IOException("Bad bzip2 selector");
+			}
+			byte selector = groupOrder[j];
+			for (; j > 0; j--)
+				groupOrder[j] = groupOrder[j - 1];
+			groupOrder[0] = selector;
+			// Encoders may pad the selectors past what a block can use.
+			if (i < MAX_SELECTORS)
+				selectors[i] = selector;
+		}
+		selectorCount = Math.min(selectorCount, MAX_SELECTORS);
+
+		// Code lengths of every table, delta coded.
+		int[] lengths = new int[alphabetSize];
+		for (int t = 0; t < groups; t++) {
+			int length = readBits(5);
+			for (int s = 0; s < alphabetSize; s++) {
+				while (true) {
+					if (length < 1 || length > MAX_CODE_LENGTH)
+						throw new IOException("Bad bzip2 code length");
+					if (readBits(1) == 0)
+						break;
+					length += readBits(1) == 0 ? 1 : -1;
+				}
+				lengths[s] = length;
+			}
+			createDecodeTable(t, lengths, alphabetSize);
+		}
+
+		// Symbols, undoing the move-to-front and the run length coding of zeros as they are read.
+		int endOfBlock = used + 1;
+		byte[] mtf = new byte[256];
+		for (int i = 0; i < 256; i++)
+			mtf[i] = (byte) i;
+		for (int i = 0; i < 256; i++)
+			unzftab[i] = 0;
+		int count = 0;
+		int group = -1;
+		int groupPosition = 0;
+		int run = 0;
+		int runWeight = 1;
+		while (true) {
+			if (groupPosition == 0) {
+				if (++group >= selectorCount)
+					throw new IOException("bzip2 block runs past its selectors");
+				groupPosition = GROUP_SIZE;
+			}
+			groupPosition--;
+			int symbol = decodeSymbol(selectors[group]);
+			if (symbol == RUNA || symbol == RUNB) {
+				run += (symbol + 1) * runWeight;
+				runWeight <<= 1;
+				if (run > blockSize)
+					throw new IOException("bzip2 run too long");
+				continue;
+			}
+			if (run > 0) {
+				int b = seqToUnseq[mtf[0] & 0xFF] & 0xFF;
+				if (count + run > blockSize)
+					throw new IOException("bzip2 block too large");
+				unzftab[b] += run;
+				while (run-- > 0)
+					tt[count++] = b;
+				run = 0;
+				runWeight = 1;
+			}
+			if (symbol == endOfBlock)
+				break;
+			if (count >= blockSize)
+				throw new IOException("bzip2 block too large");
+			int index = symbol - 1;
+			byte moved = mtf[index];
+			System.arraycopy(mtf, 0, mtf, 1, index);
+			mtf[0] = moved;
+			int b = seqToUnseq[moved & 0xFF] & 0xFF;
+			unzftab[b]++;
+			tt[count++] = b;
+		}
+		if (origPtr < 0 || origPtr >= Math.max(count, 1))
+			throw new IOException("Bad bzip2 origin pointer");
+
+		// Link every byte to the one following it in the original block, inverting the Burrows-Wheeler transform.
+		cftab[0] = 0;
+		for (int i = 0; i < 256; i++)
+			cftab[i + 1] = cftab[i] + unzftab[i];
+		for (int i = 0; i < count; i++) {
+			int b = tt[i] & 0xFF;
+			tt[cftab[b]++] |= i << 8;
+		}
+		tPos = count > 0 ? tt[origPtr] >>> 8 : 0;
+		blockRemaining = count;
+		computedBlockCrc = -1;
+		lastByte = -1;
+		runLength = 0;
+		repeat = 0;
+		inBlock = true;
+	}
+
+	/**
+	 * Builds the canonical Huffman decoding table of a group from its code lengths.
+	 */
+	private void createDecodeTable(int group, int[] lengths, int alphabetSize)
+	{
+		int min = MAX_CODE_LENGTH;
+		int max = 0;
+		for (int s = 0; s < alphabetSize; s++) {
+			min = Math.min(min, lengths[s]);
+			max = Math.max(max, lengths[s]);
+		}
+		int[] groupPerm = perm[group];
+		int[] groupBase = base[group];
+		int[] groupLimit = limit[group];
+		int p = 0;
+		for (int length = min; length <= max; length++) {
+			for (int s = 0; s < alphabetSize; s++) {
+				if (lengths[s] == length)
+					groupPerm[p++] = s;
+			}
+		}
+		for (int i = 0; i < groupBase.length; i++) {
+			groupBase[i] = 0;
+			groupLimit[i] = 0;
+		}
+		for (int s = 0; s < alphabetSize; s++)
+			groupBase[lengths[s] + 1]++;
+		for (int i = 1; i < groupBase.length; i++)
+			groupBase[i] += groupBase[i - 1];
+		int code = 0;
+		for (int length = min; length <= max; length++) {
+			code += groupBase[length + 1] - groupBase[length];
+			groupLimit[length] = code - 1;
+			code <<= 1;
+		}
+		for (int length = min + 1; length <= max; length++)
+			groupBase[length] = ((groupLimit[length - 1] + 1) << 1) - groupBase[length];
+		minLengths[group] = min;
+		maxLengths[group] = max;
+	}
+
+	private int decodeSymbol(int group) throws IOException
+	{
+		int[] groupLimit = limit[group];
+		int length = minLengths[group];
+		int max = maxLengths[group];
+		int code = readBits(length);
+		while (code > groupLimit[length]) {
+			if (++length > max)
+				throw new IOException("Bad bzip2 Huffman code");
+			code = (code << 1) | readBits(1);
+		}
+		int index = code - base[group][length];
+		if (index < 0 || index >= perm[group].length)
+			throw new IOException("Bad bzip2 Huffman code");
+		return perm[group][index];
+	}
+
+	private int readBits(int count) throws IOException
+	{
+		while (bitCount < count) {
+			int b = readByte();
+			if (b < 0)
+				throw new IOException("Truncated bzip2 stream");
+			bits = (bits << 8) | b;
+			bitCount += 8;
+		}
+		bitCount -= count;
+		return (int) ((bits >>> bitCount) & ((1L << count) - 1));
+	}
+
+	private int readByte() throws IOException
+	{
+		if (inputPosition == inputLength) {
+			inputLength = in.read(input, 0, input.length);
+			inputPosition = 0;
+			if (inputLength <= 0) {
+				inputLength = 0;
+				return -1;
+			}
+		}
+		return input[inputPosition++] & 0xFF;
+	}
+}
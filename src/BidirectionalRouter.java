@@ -0,0 +1,111 @@
+/**
+ * Finds shortest paths by searching forward from the start and backward from the destination at the same time,
+ * always advancing the side with the smaller queue. The search stops once the smallest keys of the two queues add up
+ * to at least the best path seen where the searches met, which on long routes settles roughly half as many nodes as a
+ * single search. Since every edge of the RoadGraph goes both ways, the backward search runs over the same graph.
+ * 
+ * When goal directed, both sides use the average of the haversine estimates towards the destination and back towards
+ * the start as their potential (p for the forward side, -p for the backward side). These potentials are consistent
+ * for both directions, so the same stopping rule still gives the shortest path.
+ * @author Jonathan Yin
+ *
+ */
+public class BidirectionalRouter implements Router {
+
+	private final RoadGraph graph;
+	private final boolean goalDirected;
+	// Each side is a Dijkstra search space over the graph, only its arrays and queue are used here.
+	private final DijkstraRouter forward;
+	private final DijkstraRouter backward;
+	// Ends of the current search, which the potentials are computed from.
+	private int sourceOrdinal;
+	private int targetOrdinal;
+	private int settledCount;
+
+	/**
+	 * Creates a bidirectional router.
+	 * @param graph The road graph to search.
+	 * @param goalDirected true to run bidirectional A*, false for bidirectional Dijkstra.
+	 */
+	public BidirectionalRouter(RoadGraph graph, boolean goalDirected)
+	{
+		this.graph = graph;
+		this.goalDirected = goalDirected;
+		forward = new DijkstraRouter(graph);
+		backward = new DijkstraRouter(graph);
+	}
+
+	@Override
+	public int[] findPath(int source, int target)
+	{
+		forward.reset();
+		backward.reset();
+		settledCount = 0;
+		if (source == target)
+			return new int[] { source };
+		sourceOrdinal = source;
+		targetOrdinal = target;
+		forward.setDistance(source, 0, -1);
+		forward.queue.offer(source, potential(source));
+		backward.setDistance(target, 0, -1);
+		backward.queue.offer(target, -potential(target));
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = -1;
+		while (!forward.queue.isEmpty() && !backward.queue.isEmpty()) {
+			if (forward.queue.peekKey() + backward.queue.peekKey() >= best)
+				break;
+			boolean isForward = forward.queue.size() <= backward.queue.size();
+			DijkstraRouter side = isForward ? forward : backward;
+			DijkstraRouter other = isForward ? backward : forward;
+			int node = side.queue.poll();
+			settledCount++;
+			double distance = side.distances[node];
+			for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+				int neighbor = graph.target(edge);
+				double distanceSum = distance + graph.weight(edge);
+				if (distanceSum < side.distances[neighbor]) {
+					side.setDistance(neighbor, distanceSum, node);
+					double p = potential(neighbor);
+					side.queue.offer(neighbor, distanceSum + (isForward ? p : -p));
+					double through = distanceSum + other.distances[neighbor];
+					if (through < best) {
+						best = through;
+						meeting = neighbor;
+					}
+				}
+			}
+		}
+		if (meeting < 0)
+			return null;
+		// The forward predecessors lead back to the start, the backward ones lead on to the destination.
+		int[] head = forward.buildPath(meeting);
+		int length = head.length;
+		for (int node = backward.predecessors[meeting]; node >= 0; node = backward.predecessors[node])
+			length++;
+		int[] path = new int[length];
+		System.arraycopy(head, 0, path, 0, head.length);
+		int index = head.length;
+		for (int node = backward.predecessors[meeting]; node >= 0; node = backward.predecessors[node])
+			path[index++] = node;
+		return path;
+	}
+
+	/**
+	 * Returns the number of nodes settled by both sides of the last search.
+	 * @return The number of nodes removed from either queue.
+	 */
+	public int getSettledCount()
+	{
+		return settledCount;
+	}
+
+	/**
+	 * The forward potential of a node, half of the estimate to the destination minus the estimate from the start.
+	 */
+	private double potential(int ordinal)
+	{
+		if (!goalDirected)
+			return 0;
+		return (graph.distance(ordinal, targetOrdinal) - graph.distance(sourceOrdinal, ordinal)) / 2;
+	}
+}
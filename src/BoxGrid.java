@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over a number of boxes, used by the MapDisplay to find the ways and node circles crossing the part of
+ * the map on screen without looking at all of them. Every box is listed in each cell it overlaps, the lists of all
+ * cells kept one after another in a single array. Boxes are in the plane of the display before panning and zooming,
+ * and are identified by their index in the list they were built from.
+ *
+ * Queries reuse one buffer for their result, so a result is only valid until the next query.
+ * @author Jonathan Yin
+ *
+ */
+public class BoxGrid {
+
+	// Average number of boxes per cell the grid is sized for.
+	private static final int BOXES_PER_CELL = 4;
+	// Largest number of cells along either axis.
+	private static final int MAX_CELLS = 512;
+
+	private final int[] bounds;
+	private final int boxCount;
+	private final int originX, originY;
+	private final int cellWidth, cellHeight;
+	private final int columns, rows;
+	// The boxes of cell c are cellBoxes[cellStarts[c]] up to cellBoxes[cellStarts[c + 1]].
+	private final int[] cellStarts;
+	private final int[] cellBoxes;
+	// Query number each box was last found by, to list boxes spanning several cells once.
+	private final int[] seen;
+	private int queryNumber;
+	private int[] results = new int[256];
+
+	/**
+	 * Builds the grid over a number of boxes.
+	 * @param bounds Box b as bounds[4b] to bounds[4b + 3]: minimum x, minimum y, maximum x, maximum y. Empty boxes,
+	 *            with a maximum below the minimum, are left out.
+	 * @param boxCount The number of boxes.
+	 */
+	public BoxGrid(int[] bounds, int boxCount)
+	{
+		this.bounds = bounds;
+		this.boxCount = boxCount;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int b = 0; b < boxCount; b++) {
+			if (isEmpty(b))
+				continue;
+			minX = Math.min(minX, bounds[b * 4]);
+			minY = Math.min(minY, bounds[b * 4 + 1]);
+			maxX = Math.max(maxX, bounds[b * 4 + 2]);
+			maxY = Math.max(maxY, bounds[b * 4 + 3]);
+		}
+		if (minX > maxX) {
+			minX = minY = 0;
+			maxX = maxY = 0;
+		}
+		int side = (int) Math.ceil(Math.sqrt((double) boxCount / BOXES_PER_CELL));
+		side = Math.max(1, Math.min(side, MAX_CELLS));
+		originX = minX;
+		originY = minY;
+		cellWidth = Math.max(1, (int) (((long) maxX - minX) / side + 1));
+		cellHeight = Math.max(1, (int) (((long) maxY - minY) / side + 1));
+		columns = (int) (((long) maxX - minX) / cellWidth + 1);
+		rows = (int) (((long) maxY - minY) / cellHeight + 1);
+		cellStarts = new int[columns * rows + 1];
+		// Count the boxes of every cell, turn the counts into starts, then fill the cells in.
+		for (int b = 0; b < boxCount; b++) {
+			if (isEmpty(b))
+				continue;
+			for (int row = row(bounds[b * 4 + 1]); row <= row(bounds[b * 4 + 3]); row++) {
+				for (int column = column(bounds[b * 4]); column <= column(bounds[b * 4 + 2]); column++)
+					cellStarts[row * columns + column + 1]++;
+			}
+		}
+		for (int c = 0; c < columns * rows; c++)
+			cellStarts[c + 1] += cellStarts[c];
+		cellBoxes = new int[cellStarts[columns * rows]];
+		int[] next = Arrays.copyOf(cellStarts, columns * rows);
+		for (int b = 0; b < boxCount; b++) {
+			if (isEmpty(b))
+				continue;
+			for (int row = row(bounds[b * 4 + 1]); row <= row(bounds[b * 4 + 3]); row++) {
+				for (int column = column(bounds[b * 4]); column <= column(bounds[b * 4 + 2]); column++)
+					cellBoxes[next[row * columns + column]++] = b;
+			}
+		}
+		seen = new int[boxCount];
+	}
+
+	/**
+	 * Finds the boxes that overlap an area.
+	 * @param minX The left edge of the area.
+	 * @param minY The top edge of the area.
+	 * @param maxX The right edge of the area.
+	 * @param maxY The bottom edge of the area.
+	 * @return The number of boxes found, whose indices are at the start of getResults in increasing order.
+	 */
+	public int query(double minX, double minY, double maxX, double maxY)
+	{
+		if (++queryNumber == 0) {
+			Arrays.fill(seen, 0);
+			queryNumber = 1;
+		}
+		if (maxX < originX || maxY < originY || minX > originX + (long) columns * cellWidth
+				|| minY > originY + (long) rows * cellHeight)
+			return 0;
+		int firstColumn = clampedColumn(minX), lastColumn = clampedColumn(maxX);
+		int firstRow = clampedRow(minY), lastRow = clampedRow(maxY);
+		int count = 0;
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+					int b = cellBoxes[i];
+					if (seen[b] == queryNumber || bounds[b * 4] > maxX || bounds[b * 4 + 2] < minX
+							|| bounds[b * 4 + 1] > maxY || bounds[b * 4 + 3] < minY)
+						continue;
+					seen[b] = queryNumber;
+					if (count == results.length)
+						results = Arrays.copyOf(results, count * 2);
+					results[count++] = b;
+				}
+			}
+		}
+		// Back in list order, so that what is drawn overlaps the same way whatever is on screen.
+		Arrays.sort(results, 0, count);
+		return count;
+	}
+
+	/**
+	 * Returns the buffer the last query put its result in.
+	 * @return The indices of the boxes found, followed by whatever earlier queries left.
+	 */
+	public int[] getResults()
+	{
+		return results;
+	}
+
+	/**
+	 * Returns the number of boxes the grid was built over.
+	 * @return The number of boxes, empty ones included.
+	 */
+	public int size()
+	{
+		return boxCount;
+	}
+
+	private boolean isEmpty(int box)
+	{
+		return bounds[box * 4 + 2] < bounds[box * 4] || bounds[box * 4 + 3] < bounds[box * 4 + 1];
+	}
+
+	private int column(int x)
+	{
+		return (int) (((long) x - originX) / cellWidth);
+	}
+
+	private int row(int y)
+	{
+		return (int) (((long) y - originY) / cellHeight);
+	}
+
+	private int clampedColumn(double x)
+	{
+		return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - originX) / cellWidth)));
+	}
+
+	private int clampedRow(double y)
+	{
+		return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - originY) / cellHeight)));
+	}
+}
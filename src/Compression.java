@@ -0,0 +1,74 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The compressions an OSM XML file can be read in, recognised by the first bytes of the file rather than its name.
+ * Compressed files are decompressed on a thread of their own that keeps a few blocks ahead of the parser, plain files
+ * are read through a buffer.
+ * @author Jonathan Yin
+ *
+ */
+public enum Compression {
+	/** Plain XML. */
+	NONE,
+	/** gzip, starting with the bytes 1F 8B. */
+	GZIP,
+	/** bzip2, starting with "BZh". */
+	BZIP2;
+
+	// Size of the reads from the file, and of the blocks handed from the decompressing thread to the parser.
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int BLOCK_SIZE = 1 << 18;
+	// Number of decompressed blocks the decompressing thread may get ahead.
+	private static final int BLOCKS = 4;
+
+	/**
+	 * Determines how a file is compressed.
+	 * @param file The file.
+	 * @return The compression of the file, NONE if it is not one recognised.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static Compression detect(File file) throws IOException
+	{
+		byte[] magic = new byte[3];
+		int length = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while (length < magic.length && (read = in.read(magic, length, magic.length - length)) > 0)
+				length += read;
+		}
+		if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B)
+			return GZIP;
+		if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h')
+			return BZIP2;
+		return NONE;
+	}
+
+	/**
+	 * Opens a file compressed this way.
+	 * @param file The file.
+	 * @return A stream of the decompressed bytes of the file.
+	 * @throws IOException If the file can't be opened or its header is not of this compression.
+	 */
+	public InputStream open(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try {
+			switch (this) {
+			case GZIP:
+				return new PipelinedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BLOCK_SIZE, BLOCKS);
+			case BZIP2:
+				return new PipelinedInputStream(new BZip2InputStream(in), BLOCK_SIZE, BLOCKS);
+			default:
+				return new BufferedInputStream(in, BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,520 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A contraction hierarchy over a RoadGraph, built as an optional preprocessing step after a file is parsed. Nodes are
+ * contracted one level at a time from least to most important. Whenever removing a node would lengthen the shortest
+ * path between two of its neighbours, a shortcut edge is added between them that remembers the node it skips. What
+ * is kept afterwards is the upward graph: for every node, the edges (original or shortcut) leading to nodes
+ * contracted after it. A HierarchyRouter answers queries with two small upward searches and unpacks the shortcuts of
+ * the result back into the original nodes.
+ *
+ * Each round contracts an independent set of nodes, those whose priority is lower than that of all of their
+ * neighbours. The shortcuts of every node in the set are computed in parallel. Witness searches ignore every node of
+ * the set, so the shortcuts found are the same as if the nodes had been contracted one after another.
+ * @author Jonathan Yin
+ *
+ */
+public class ContractionHierarchy {
+
+	// Witness searches give up after settling this many nodes, in which case the shortcut is added anyway.
+	private static final int WITNESS_SETTLE_LIMIT = 500;
+
+	private final RoadGraph graph;
+	// Order in which the nodes were contracted, higher ranks are more important.
+	private final int[] ranks;
+	// Upward edges of node i are stored from offsets[i] up to offsets[i + 1].
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+	// Node skipped by each edge, or -1 for an edge of the original graph.
+	private int[] middles;
+	private int shortcutCount;
+
+	/**
+	 * Contracts every node of a road graph, using all available cores.
+	 * @param graph The road graph to build the hierarchy for.
+	 */
+	public ContractionHierarchy(RoadGraph graph)
+	{
+		this.graph = graph;
+		ranks = new int[graph.size()];
+		new Contractor().contract();
+	}
+
+	/**
+	 * Returns the road graph this hierarchy was built from.
+	 * @return The original road graph.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * Returns the number of nodes in this hierarchy.
+	 * @return The number of nodes, the same as in the road graph.
+	 */
+	public int size()
+	{
+		return ranks.length;
+	}
+
+	/**
+	 * Returns the position of a node in the contraction order.
+	 * @param ordinal The ordinal of the node.
+	 * @return The rank of the node, higher ranks were contracted later.
+	 */
+	public int rank(int ordinal)
+	{
+		return ranks[ordinal];
+	}
+
+	/**
+	 * Returns the number of shortcut edges added during contraction.
+	 * @return The number of upward edges that are shortcuts.
+	 */
+	public int getShortcutCount()
+	{
+		return shortcutCount;
+	}
+
+	public int firstEdge(int ordinal)
+	{
+		return offsets[ordinal];
+	}
+
+	public int endEdge(int ordinal)
+	{
+		return offsets[ordinal + 1];
+	}
+
+	public int target(int edge)
+	{
+		return targets[edge];
+	}
+
+	public double weight(int edge)
+	{
+		return weights[edge];
+	}
+
+	/**
+	 * Replaces every shortcut along a path through the upward graph with the original nodes it skips.
+	 * @param packed Ordinals along a path where each consecutive pair is joined by an upward edge.
+	 * @return The ordinals of the same path in the original road graph.
+	 */
+	public int[] unpack(int[] packed)
+	{
+		int[] path = new int[Math.max(packed.length, 16)];
+		int length = 0;
+		path[length++] = packed[0];
+		int[] stack = new int[32];
+		for (int i = 0; i < packed.length - 1; i++) {
+			int top = 0;
+			stack[top++] = packed[i];
+			stack[top++] = packed[i + 1];
+			while (top > 0) {
+				int to = stack[--top];
+				int from = stack[--top];
+				int middle = middleOf(from, to);
+				if (middle < 0) {
+					if (length == path.length)
+						path = Arrays.copyOf(path, length * 2);
+					path[length++] = to;
+				} else {
+					if (top + 4 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					// Push the second half first so that the first half is unpacked first.
+					stack[top++] = middle;
+					stack[top++] = to;
+					stack[top++] = from;
+					stack[top++] = middle;
+				}
+			}
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Finds the node skipped by the upward edge between two nodes, which is stored with the lower ranked of the two.
+	 */
+	private int middleOf(int from, int to)
+	{
+		int lower = ranks[from] < ranks[to] ? from : to;
+		int higher = lower == from ? to : from;
+		for (int edge = offsets[lower]; edge < offsets[lower + 1]; edge++) {
+			if (targets[edge] == higher)
+				return middles[edge];
+		}
+		throw new IllegalStateException("No hierarchy edge between " + from + " and " + to);
+	}
+
+	/**
+	 * Shortcuts found when contracting a single node.
+	 */
+	private static class Shortcuts {
+		int count;
+		int[] from = new int[4];
+		int[] to = new int[4];
+		double[] weights = new double[4];
+
+		void add(int u, int w, double weight)
+		{
+			if (count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+				weights = Arrays.copyOf(weights, count * 2);
+			}
+			from[count] = u;
+			to[count] = w;
+			weights[count++] = weight;
+		}
+	}
+
+	/**
+	 * The graph being contracted. Every node keeps its own growable edge lists, edges to contracted nodes are skipped
+	 * while contracting and dropped when the node itself is contracted, so that its lists hold exactly its upward
+	 * edges.
+	 */
+	private class Contractor {
+		private final int size;
+		private final int[][] adjacentNodes;
+		private final double[][] adjacentWeights;
+		private final int[][] adjacentMiddles;
+		private final int[] degrees;
+		private final boolean[] contracted;
+		// Nodes being contracted in the current round, which witness searches must avoid.
+		private final boolean[] inBatch;
+		private final int[] priorities;
+		private final int[] deletedNeighbors;
+		private final ThreadLocal<WitnessSearch> searches;
+
+		Contractor()
+		{
+			size = graph.size();
+			adjacentNodes = new int[size][];
+			adjacentWeights = new double[size][];
+			adjacentMiddles = new int[size][];
+			degrees = new int[size];
+			contracted = new boolean[size];
+			inBatch = new boolean[size];
+			priorities = new int[size];
+			deletedNeighbors = new int[size];
+			searches = new ThreadLocal<WitnessSearch>() {
+				@Override
+				protected WitnessSearch initialValue()
+				{
+					return new WitnessSearch();
+				}
+			};
+			for (int node = 0; node < size; node++) {
+				int capacity = Math.max(graph.endEdge(node) - graph.firstEdge(node), 2);
+				adjacentNodes[node] = new int[capacity];
+				adjacentWeights[node] = new double[capacity];
+				adjacentMiddles[node] = new int[capacity];
+				for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++)
+					addEdge(node, graph.target(edge), graph.weight(edge), -1);
+			}
+		}
+
+		void contract()
+		{
+			IntStream.range(0, size).parallel().forEach(node -> priorities[node] = priority(node));
+			int[] remaining = new int[size];
+			for (int i = 0; i < size; i++)
+				remaining[i] = i;
+			int remainingCount = size;
+			int nextRank = 0;
+			boolean[] neighborFlags = new boolean[size];
+			int[] neighbors = new int[size];
+			while (remainingCount > 0) {
+				int[] batch = Arrays.stream(remaining, 0, remainingCount).parallel().filter(this::isLocalMinimum)
+						.toArray();
+				for (int node : batch)
+					inBatch[node] = true;
+				Shortcuts[] found = new Shortcuts[batch.length];
+				IntStream.range(0, batch.length).parallel()
+						.forEach(i -> found[i] = findShortcuts(batch[i], searches.get(), true));
+				int neighborCount = 0;
+				for (int i = 0; i < batch.length; i++) {
+					int node = batch[i];
+					contracted[node] = true;
+					ranks[node] = nextRank++;
+					Shortcuts shortcuts = found[i];
+					for (int s = 0; s < shortcuts.count; s++) {
+						addEdge(shortcuts.from[s], shortcuts.to[s], shortcuts.weights[s], node);
+						addEdge(shortcuts.to[s], shortcuts.from[s], shortcuts.weights[s], node);
+					}
+					dropContractedEdges(node);
+					for (int e = 0; e < degrees[node]; e++) {
+						int neighbor = adjacentNodes[node][e];
+						deletedNeighbors[neighbor]++;
+						if (!neighborFlags[neighbor]) {
+							neighborFlags[neighbor] = true;
+							neighbors[neighborCount++] = neighbor;
+						}
+					}
+				}
+				for (int node : batch)
+					inBatch[node] = false;
+				IntStream.range(0, neighborCount).parallel()
+						.forEach(i -> priorities[neighbors[i]] = priority(neighbors[i]));
+				for (int i = 0; i < neighborCount; i++)
+					neighborFlags[neighbors[i]] = false;
+				int kept = 0;
+				for (int i = 0; i < remainingCount; i++) {
+					if (!contracted[remaining[i]])
+						remaining[kept++] = remaining[i];
+				}
+				remainingCount = kept;
+			}
+			buildUpwardGraph();
+		}
+
+		/**
+		 * A node is contracted this round if its priority is lower than that of every remaining neighbour, ties
+		 * going to the lower ordinal.
+		 */
+		private boolean isLocalMinimum(int node)
+		{
+			int priority = priorities[node];
+			int[] adjacent = adjacentNodes[node];
+			for (int e = 0; e < degrees[node]; e++) {
+				int neighbor = adjacent[e];
+				if (contracted[neighbor])
+					continue;
+				int other = priorities[neighbor];
+				if (other < priority || (other == priority && neighbor < node))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Priority of a node is its edge difference (shortcuts added minus edges removed) plus the number of
+		 * neighbours already contracted, which spreads the contraction evenly over the map.
+		 */
+		private int priority(int node)
+		{
+			Shortcuts shortcuts = findShortcuts(node, searches.get(), false);
+			int remainingDegree = 0;
+			for (int e = 0; e < degrees[node]; e++) {
+				if (!contracted[adjacentNodes[node][e]])
+					remainingDegree++;
+			}
+			return shortcuts.count - remainingDegree + deletedNeighbors[node];
+		}
+
+		/**
+		 * Finds the shortcuts needed to contract a node: for every pair of remaining neighbours u and w, a shortcut
+		 * is needed unless a witness path from u to w avoiding the node is no longer than going through it.
+		 * @param keep false to only count the shortcuts, in which case only the count of the result is filled in.
+		 */
+		private Shortcuts findShortcuts(int node, WitnessSearch search, boolean keep)
+		{
+			Shortcuts shortcuts = keep ? new Shortcuts() : search.scratch;
+			shortcuts.count = 0;
+			int[] adjacent = adjacentNodes[node];
+			double[] adjacentWeight = adjacentWeights[node];
+			int degree = degrees[node];
+			for (int i = 0; i < degree; i++) {
+				int u = adjacent[i];
+				if (contracted[u])
+					continue;
+				// Edges between nodes at the same spot weigh 0, so a bound of 0 can still need shortcuts.
+				double maxDistance = 0;
+				boolean anyNeighbour = false;
+				for (int j = i + 1; j < degree; j++) {
+					if (!contracted[adjacent[j]]) {
+						maxDistance = Math.max(maxDistance, adjacentWeight[i] + adjacentWeight[j]);
+						anyNeighbour = true;
+					}
+				}
+				if (!anyNeighbour)
+					continue;
+				search.run(u, node, maxDistance);
+				for (int j = i + 1; j < degree; j++) {
+					int w = adjacent[j];
+					if (contracted[w])
+						continue;
+					double through = adjacentWeight[i] + adjacentWeight[j];
+					if (search.distance(w) > through) {
+						if (keep)
+							shortcuts.add(u, w, through);
+						else
+							shortcuts.count++;
+					}
+				}
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Adds an edge to the lists of a node, or shortens the existing edge to the same target.
+		 */
+		private void addEdge(int node, int target, double weight, int middle)
+		{
+			int[] adjacent = adjacentNodes[node];
+			int degree = degrees[node];
+			for (int e = 0; e < degree; e++) {
+				if (adjacent[e] == target) {
+					if (weight < adjacentWeights[node][e]) {
+						adjacentWeights[node][e] = weight;
+						adjacentMiddles[node][e] = middle;
+					}
+					return;
+				}
+			}
+			if (degree == adjacent.length) {
+				adjacentNodes[node] = Arrays.copyOf(adjacent, degree * 2);
+				adjacentWeights[node] = Arrays.copyOf(adjacentWeights[node], degree * 2);
+				adjacentMiddles[node] = Arrays.copyOf(adjacentMiddles[node], degree * 2);
+			}
+			adjacentNodes[node][degree] = target;
+			adjacentWeights[node][degree] = weight;
+			adjacentMiddles[node][degree] = middle;
+			degrees[node]++;
+		}
+
+		/**
+		 * Removes the edges of a node leading to contracted nodes, leaving only its upward edges.
+		 */
+		private void dropContractedEdges(int node)
+		{
+			int kept = 0;
+			for (int e = 0; e < degrees[node]; e++) {
+				int target = adjacentNodes[node][e];
+				if (contracted[target])
+					continue;
+				adjacentNodes[node][kept] = target;
+				adjacentWeights[node][kept] = adjacentWeights[node][e];
+				adjacentMiddles[node][kept] = adjacentMiddles[node][e];
+				kept++;
+			}
+			degrees[node] = kept;
+		}
+
+		private void buildUpwardGraph()
+		{
+			offsets = new int[size + 1];
+			for (int node = 0; node < size; node++)
+				offsets[node + 1] = offsets[node] + degrees[node];
+			int edgeCount = offsets[size];
+			targets = new int[edgeCount];
+			weights = new double[edgeCount];
+			middles = new int[edgeCount];
+			shortcutCount = 0;
+			for (int node = 0; node < size; node++) {
+				int start = offsets[node];
+				int degree = degrees[node];
+				System.arraycopy(adjacentNodes[node], 0, targets, start, degree);
+				System.arraycopy(adjacentWeights[node], 0, weights, start, degree);
+				System.arraycopy(adjacentMiddles[node], 0, middles, start, degree);
+				for (int e = 0; e < degree; e++) {
+					if (adjacentMiddles[node][e] >= 0)
+						shortcutCount++;
+				}
+			}
+		}
+
+		/**
+		 * A bounded Dijkstra search through the remaining graph, one per worker thread. Distances are invalidated by
+		 * bumping a stamp instead of clearing the arrays, and the heap allows duplicates instead of decrease-key since
+		 * the searches are small.
+		 */
+		private class WitnessSearch {
+			private final double[] distances = new double[size];
+			private final int[] stamps = new int[size];
+			private int stamp = 0;
+			private int[] heapNodes = new int[64];
+			private double[] heapKeys = new double[64];
+			private int heapSize;
+			private final Shortcuts scratch = new Shortcuts();
+
+			/**
+			 * Searches from a source while avoiding the node being contracted, up to a maximum distance.
+			 */
+			void run(int source, int via, double maxDistance)
+			{
+				if (++stamp == Integer.MAX_VALUE) {
+					Arrays.fill(stamps, 0);
+					stamp = 1;
+				}
+				heapSize = 0;
+				stamps[source] = stamp;
+				distances[source] = 0;
+				push(source, 0);
+				int settled = 0;
+				while (heapSize > 0) {
+					double key = heapKeys[0];
+					int node = pop();
+					if (key > distances[node])
+						continue;
+					if (key > maxDistance || ++settled > WITNESS_SETTLE_LIMIT)
+						return;
+					int[] adjacent = adjacentNodes[node];
+					double[] adjacentWeight = adjacentWeights[node];
+					for (int e = 0; e < degrees[node]; e++) {
+						int neighbor = adjacent[e];
+						if (neighbor == via || contracted[neighbor] || inBatch[neighbor])
+							continue;
+						double distanceSum = key + adjacentWeight[e];
+						if (stamps[neighbor] != stamp || distanceSum < distances[neighbor]) {
+							stamps[neighbor] = stamp;
+							distances[neighbor] = distanceSum;
+							push(neighbor, distanceSum);
+						}
+					}
+				}
+			}
+
+			double distance(int node)
+			{
+				return stamps[node] == stamp ? distances[node] : Double.POSITIVE_INFINITY;
+			}
+
+			private void push(int node, double key)
+			{
+				if (heapSize == heapNodes.length) {
+					heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+					heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+				}
+				int position = heapSize++;
+				while (position > 0) {
+					int parent = (position - 1) / 2;
+					if (heapKeys[parent] <= key)
+						break;
+					heapNodes[position] = heapNodes[parent];
+					heapKeys[position] = heapKeys[parent];
+					position = parent;
+				}
+				heapNodes[position] = node;
+				heapKeys[position] = key;
+			}
+
+			private int pop()
+			{
+				int min = heapNodes[0];
+				int node = heapNodes[--heapSize];
+				double key = heapKeys[heapSize];
+				int position = 0;
+				while (true) {
+					int child = position * 2 + 1;
+					if (child >= heapSize)
+						break;
+					if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+						child++;
+					if (heapKeys[child] >= key)
+						break;
+					heapNodes[position] = heapNodes[child];
+					heapKeys[position] = heapKeys[child];
+					position = child;
+				}
+				heapNodes[position] = node;
+				heapKeys[position] = key;
+				return min;
+			}
+		}
+	}
+}
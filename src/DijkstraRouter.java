@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/**
+ * Finds shortest paths through a RoadGraph with Dijkstra's algorithm. Distances and predecessors are kept in dense
+ * arrays indexed by node ordinal and the next node to settle is taken from an IndexedMinHeap, so a search runs in
+ * O((V + E) log V). The arrays are allocated once per graph and only the entries touched by a search are reset before
+ * the next one.
+ * @author Jonathan Yin
+ *
+ */
+public class DijkstraRouter implements Router {
+
+	protected final RoadGraph graph;
+	protected final double[] distances;
+	protected final int[] predecessors;
+	protected final IndexedMinHeap queue;
+	// Ordinals whose distance was set by the last search, cleared before the next one.
+	private int[] touched;
+	private int touchedCount;
+	private int settledCount;
+
+	public DijkstraRouter(RoadGraph graph)
+	{
+		this.graph = graph;
+		int size = graph.size();
+		distances = new double[size];
+		predecessors = new int[size];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessors, -1);
+		queue = new IndexedMinHeap(size);
+		touched = new int[16];
+		touchedCount = 0;
+	}
+
+	@Override
+	public int[] findPath(int source, int target)
+	{
+		search(source, target);
+		return distances[target] == Double.POSITIVE_INFINITY ? null : buildPath(target);
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from a source until every reachable node is settled. Afterwards getDistance and
+	 * getPredecessor describe the shortest path tree rooted at the source.
+	 * @param source Ordinal of the root of the tree.
+	 */
+	public void searchFrom(int source)
+	{
+		search(source, -1);
+	}
+
+	/**
+	 * Settles nodes in order of their key until the target is settled, or every reachable node if there is none.
+	 */
+	private void search(int source, int target)
+	{
+		reset();
+		settledCount = 0;
+		setDistance(source, 0, -1);
+		queue.offer(source, target < 0 ? 0 : estimate(source, target));
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			settledCount++;
+			if (node == target)
+				return;
+			double distance = distances[node];
+			for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+				int neighbor = graph.target(edge);
+				double distanceSum = distance + graph.weight(edge);
+				if (distanceSum < distances[neighbor]) {
+					setDistance(neighbor, distanceSum, node);
+					queue.offer(neighbor, target < 0 ? distanceSum : distanceSum + estimate(neighbor, target));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lower bound on the remaining distance from a node to the target, added to the distance of a node when it is
+	 * queued. Plain Dijkstra has no estimate, subclasses can supply one to direct the search towards the target.
+	 * @param node Ordinal of the node being queued.
+	 * @param target Ordinal of the destination node.
+	 * @return A lower bound on the distance from node to target.
+	 */
+	protected double estimate(int node, int target)
+	{
+		return 0;
+	}
+
+	/**
+	 * Returns the length of the shortest path to a node found by the last search.
+	 * @param target The target of the last search, or any node after searchFrom.
+	 * @return The length of the path in meters, or positive infinity if there was none.
+	 */
+	public double getDistance(int target)
+	{
+		return distances[target];
+	}
+
+	/**
+	 * Returns the node before a node on the shortest path found by the last search.
+	 * @param node The ordinal of a node reached by the last search.
+	 * @return The ordinal of the previous node, or -1 for the source or an unreached node.
+	 */
+	public int getPredecessor(int node)
+	{
+		return predecessors[node];
+	}
+
+	/**
+	 * Returns the number of nodes settled by the last search, useful for comparing search strategies.
+	 * @return The number of nodes removed from the queue.
+	 */
+	public int getSettledCount()
+	{
+		return settledCount;
+	}
+
+	/**
+	 * Records a tentative distance and predecessor for a node, remembering it so that it can be reset later.
+	 */
+	protected void setDistance(int node, double distance, int predecessor)
+	{
+		if (distances[node] == Double.POSITIVE_INFINITY) {
+			if (touchedCount == touched.length)
+				touched = Arrays.copyOf(touched, touchedCount * 2);
+			touched[touchedCount++] = node;
+		}
+		distances[node] = distance;
+		predecessors[node] = predecessor;
+	}
+
+	/**
+	 * Clears everything left behind by the previous search.
+	 */
+	protected void reset()
+	{
+		for (int i = 0; i < touchedCount; i++) {
+			distances[touched[i]] = Double.POSITIVE_INFINITY;
+			predecessors[touched[i]] = -1;
+		}
+		touchedCount = 0;
+		queue.clear();
+	}
+
+	/**
+	 * Follows the predecessors back from the target to produce the path in order.
+	 */
+	protected int[] buildPath(int target)
+	{
+		int length = 0;
+		for (int node = target; node >= 0; node = predecessors[node])
+			length++;
+		int[] path = new int[length];
+		for (int node = target; node >= 0; node = predecessors[node])
+			path[--length] = node;
+		return path;
+	}
+}
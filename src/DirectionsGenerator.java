@@ -1,11 +1,6 @@
 import java.awt.Dialog;
-import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Stack;
 
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
@@ -22,12 +17,54 @@ import com.starkeffect.highway.GPSListener;
  *
  */
 public class DirectionsGenerator implements DataModelObserver, GPSListener {
+
+	/**
+	 * The search strategies that can be used to generate directions, all of
+	 * them produce paths of the same length.
+	 */
+	public enum RoutingMode {
+		// Plain Dijkstra, settles nodes in every direction around the start.
+		DIJKSTRA,
+		// A* with the straight line distance to the destination as estimate.
+		A_STAR,
+		// Dijkstra from both the start and the destination until they meet.
+		BIDIRECTIONAL,
+		// Bidirectional search using the straight line estimates of both ends.
+		BIDIRECTIONAL_A_STAR,
+		// Upward searches through the contraction hierarchy of the model,
+		// falls back to bidirectional search if the model has none.
+		CONTRACTION_HIERARCHY,
+		// A* bounded by distances to landmarks precomputed by the model, falls
+		// back to A* if the model has none.
+		LANDMARKS
+	}
+
 	// The dataModel that this DirectionsGenerator is based off of.
 	private MapDataModel model;
+	// Road network of the model, refreshed whenever a new file is loaded.
+	private RoadGraph graph;
+	// Spatial index used to find the node closest to the current location.
+	private NodeIndex nodeIndex;
+	// Spatial index used to find the road segment the current location is on.
+	private SegmentIndex segmentIndex;
+	// Shortest path searches over the road graph, created when a mode is
+	// first used and reused between queries.
+	private Map<RoutingMode, Router> routers;
+	// Recently generated routes, cleared whenever a new file is loaded.
+	private RouteCache routeCache;
+	private static final int DEFAULT_ROUTE_CACHE_CAPACITY = 256;
+	// Mode used when a query doesn't specify one.
+	private RoutingMode routingMode = RoutingMode.DIJKSTRA;
 	private Way generatedPath;
 	private boolean driveThere;
 	private MapDisplay display;
 	private Node driveDestination = null;
+	// Shortest paths from every node to the drive there destination, built
+	// once when the destination is set so that rerouting is a walk up the
+	// tree.
+	private ShortestPathTree destinationTree = null;
+	// Progress along the generated path, recreated whenever the path changes.
+	private RouteTracker routeTracker = null;
 	// Arbitrary amount to determine if the current User location is out of
 	// range of the generated Path.
 	private final double OUT_OF_RANGE = 30;
@@ -35,6 +72,11 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 
 	public DirectionsGenerator(MapDataModel model, MapDisplay display) {
 		this.model = model;
+		graph = model.getRoadGraph();
+		nodeIndex = model.getNodeIndex();
+		segmentIndex = model.getSegmentIndex();
+		routers = new EnumMap<RoutingMode, Router>(RoutingMode.class);
+		routeCache = new RouteCache(DEFAULT_ROUTE_CACHE_CAPACITY);
 		generatedPath = null;
 		driveThere = false;
 		this.display = display;
@@ -53,15 +95,32 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 	 *         exists or if the start and end nodes are the same.
 	 */
 	public Way parseString(String start, String dest) {
-		Node startNode = (Node) model.getDataPoint(start);
+		return parseString(start, dest, routingMode);
+	}
 
-		Node endNode = (Node) model.getDataPoint(dest);
+	/**
+	 * Parses two strings which represent node names or id's and generates a
+	 * path between them using the given routing mode.
+	 * 
+	 * @param start
+	 *            String representing the starting node.
+	 * @param dest
+	 *            String representing the destination node.
+	 * @param mode
+	 *            The search strategy to use for this query.
+	 * @return A way between the start and dest nodes or Null if no such path
+	 *         exists or if the start and end nodes are the same.
+	 */
+	public Way parseString(String start, String dest, RoutingMode mode) {
+		Node startNode = model.getNode(start);
+
+		Node endNode = model.getNode(dest);
 
 		if (startNode.equals(endNode)) {
 			return null;
 		}
 
-		return generateDirections(startNode, endNode);
+		return generateDirections(startNode, endNode, mode);
 
 	}
 
@@ -79,81 +138,56 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 	 *         the endNode or null if no such path exists.
 	 */
 	public Way generateDirections(Node start, Node dest) {
-		// Implementing Djkstra's algorithm.
-		List<Node> nodes = model.getNodes();
-		List<Way> ways = model.getWays();
-		Node LastNode = start;
-		List<Node> visited = new ArrayList<Node>();
-		// Keeps track of the last node of the shortest path to each of these
-		// nodes
-		Map<Node, Node> predecessors = new HashMap<Node, Node>();
-		HashMap<Node, Double> distances = new HashMap<Node, Double>();
-		for (Node node : nodes) {
-			distances.put(node, Double.POSITIVE_INFINITY);
-			distances.put(start, 0.0);
-			// Assumed at start that predecessor node is the start node at
-			// first.
-			predecessors.put(node, start);
-		}
-		predecessors.put(start, null);
-		while (!(LastNode.equals(dest)) && (visited.size() != nodes.size())) {
-			// Look through each way, If it contains the node we are checking,
-			// find the distance from the node immediately behind and in front
-			// of it.
-			for (Way way : ways) {
-				if (way.containsNode(LastNode)) {
-					List<Node> wayNodes = way.getNodes();
-					int index = wayNodes.indexOf(LastNode);
-					Node prevNode = null, postNode = null;
-					if (index == 0) {
-						postNode = wayNodes.get(index + 1);
-					} else if (index == wayNodes.size() - 1) {
-						prevNode = wayNodes.get(index - 1);
-					} else {
-						prevNode = wayNodes.get(index - 1);
-						postNode = wayNodes.get(index + 1);
-					}
-					double distanceToPrev = Double.POSITIVE_INFINITY, distanceToPost = Double.POSITIVE_INFINITY;
-					if (!(prevNode == null)) {
-						distanceToPrev = LastNode.distanceTo(prevNode);
-					}
-					if (!(postNode == null)) {
-						distanceToPost = LastNode.distanceTo(postNode);
-					}
-					// Update predecessors if needed.
-					double distanceSumPrev = distanceToPrev + distances.get(LastNode);
-					double distanceSumPost = distanceToPost + distances.get(LastNode);
-					if (!(prevNode == null)) {
-						if (distanceSumPrev < distances.get(prevNode)) {
-							distances.put(prevNode, distanceSumPrev);
-							predecessors.put(prevNode, LastNode);
-						}
-					}
-					if (!(postNode == null)) {
-						if (distanceSumPost < distances.get(postNode)) {
-							distances.put(postNode, distanceSumPost);
-							predecessors.put(postNode, LastNode);
-						}
-					}
-
-				}
+		return generateDirections(start, dest, routingMode);
+	}
 
+	/**
+	 * Creates a DirectionsPath from the start point to the destination using
+	 * the given routing mode.
+	 * 
+	 * @param start
+	 *            The starting Location
+	 * @param dest
+	 *            The ending Location
+	 * @param mode
+	 *            The search strategy to use for this query.
+	 * @return A way of nodes which will highlight the way from the startNode to
+	 *         the endNode or null if no such path exists.
+	 */
+	public Way generateDirections(Node start, Node dest, RoutingMode mode) {
+		int source = graph.ordinalOf(start);
+		int target = graph.ordinalOf(dest);
+		int[] path = null;
+		if (source >= 0 && target >= 0) {
+			Way cached = routeCache.get(source, target);
+			if (cached != null) {
+				generatedPath = cached;
+				display.setDirectionsPath(generatedPath);
+				return cached;
 			}
-			// Look for next shortest distance Node.
-			nodes.remove(LastNode);
-			visited.add(LastNode);
-			Node shortestNode = null;
-			double shortestDistance = Double.POSITIVE_INFINITY;
-			for (Node node : nodes) {
-				double nodeDistance = distances.get(node);
-				if (nodeDistance < shortestDistance) {
-					shortestDistance = nodeDistance;
-					shortestNode = node;
-				}
-			}
-			LastNode = shortestNode;
+			path = getRouter(mode).findPath(source, target);
+		}
+		Way destWay = showPath(path, dest);
+		if (destWay != null) {
+			routeCache.put(source, target, destWay);
 		}
-		if (distances.get(dest) == Double.POSITIVE_INFINITY) {
+		return destWay;
+	}
+
+	/**
+	 * Turns the ordinals of a path into the generated directions Way and hands
+	 * it to the display, or warns that there is no path. The Way is read only
+	 * so that it can be cached.
+	 * 
+	 * @param path
+	 *            Ordinals of the nodes along the path, or null if there is
+	 *            none.
+	 * @param dest
+	 *            The destination node.
+	 * @return The directions Way or null if there was no path.
+	 */
+	private Way showPath(int[] path, Node dest) {
+		if (path == null) {
 			JOptionPane optionPane = new JOptionPane("There doesn't exist a path between these two points");
 			JDialog dialog = optionPane.createDialog("No path found");
 			dialog.setModalityType(Dialog.ModalityType.MODELESS);
@@ -161,19 +195,134 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 			return null;
 		}
 		Way destWay = new Way();
-		Stack<Node> stack = new Stack<Node>();
-		Node destination = dest;
-		while (dest != null) {
-			stack.push(dest);
-			dest = predecessors.get(dest);
+		// The path ends at the destination.
+		for (int ordinal : path) {
+			destWay.addNode(graph.getNode(ordinal));
 		}
-		while (!stack.isEmpty()) {
-			destWay.addNode(stack.pop());
-		}
-		destWay.addNode(destination);
-		generatedPath = destWay;
+		generatedPath = destWay.readOnlyCopy();
 		display.setDirectionsPath(generatedPath);
-		return destWay;
+		return generatedPath;
+	}
+
+	/**
+	 * Generates directions from a node to the drive there destination. The
+	 * path is read from the shortest path tree of the destination when there
+	 * is one, so rerouting doesn't need a new search.
+	 * 
+	 * @param start
+	 *            The node to reroute from.
+	 * @return The directions Way or null if there is no path.
+	 */
+	private Way directionsToDestination(Node start) {
+		int source = graph == null ? -1 : graph.ordinalOf(start);
+		if (destinationTree == null || source < 0) {
+			return generateDirections(start, driveDestination);
+		}
+		return showPath(destinationTree.pathFrom(source), driveDestination);
+	}
+
+	/**
+	 * Generates directions to the drive there destination from the road the
+	 * current location is on. The location is snapped onto the closest way
+	 * segment and the route leaves the segment through whichever of its two
+	 * nodes gives the shorter trip, which on long ways with few nodes can be
+	 * a different node than the closest one.
+	 * 
+	 * @param lat
+	 *            The latitude of the current location.
+	 * @param lon
+	 *            The longitude of the current location.
+	 * @return The directions Way or null if there is no path.
+	 */
+	private Way rerouteFrom(double lat, double lon) {
+		SegmentIndex.Match match = segmentIndex == null ? null : segmentIndex.nearest(lat, lon);
+		if (match == null || segmentIndex.getRoadGraph() != graph) {
+			return directionsToDestination(getClosestLocation(lat, lon));
+		}
+		Node from = graph.getNode(match.getFrom());
+		Node to = graph.getNode(match.getTo());
+		double segmentLength = from.distanceTo(to);
+		double viaFrom = match.getFraction() * segmentLength;
+		double viaTo = (1 - match.getFraction()) * segmentLength;
+		if (destinationTree != null) {
+			viaFrom += destinationTree.getDistance(match.getFrom());
+			viaTo += destinationTree.getDistance(match.getTo());
+		} else {
+			// Without the tree the straight line distance has to do.
+			viaFrom += from.distanceTo(driveDestination);
+			viaTo += to.distanceTo(driveDestination);
+		}
+		return directionsToDestination(viaFrom <= viaTo ? from : to);
+	}
+
+	/**
+	 * Returns the router for a routing mode, creating it over the current road
+	 * graph the first time the mode is used.
+	 */
+	private Router getRouter(RoutingMode mode) {
+		Router router = routers.get(mode);
+		if (router == null) {
+			switch (mode) {
+			case A_STAR:
+				router = new AStarRouter(graph);
+				break;
+			case BIDIRECTIONAL:
+				router = new BidirectionalRouter(graph, false);
+				break;
+			case BIDIRECTIONAL_A_STAR:
+				router = new BidirectionalRouter(graph, true);
+				break;
+			case CONTRACTION_HIERARCHY:
+				ContractionHierarchy hierarchy = model.getContractionHierarchy();
+				if (hierarchy != null && hierarchy.getRoadGraph() == graph)
+					router = new HierarchyRouter(hierarchy);
+				else
+					router = getRouter(RoutingMode.BIDIRECTIONAL);
+				break;
+			case LANDMARKS:
+				Landmarks landmarks = model.getLandmarks();
+				if (landmarks != null && landmarks.getRoadGraph() == graph)
+					router = new LandmarkRouter(landmarks);
+				else
+					router = getRouter(RoutingMode.A_STAR);
+				break;
+			default:
+				router = new DijkstraRouter(graph);
+				break;
+			}
+			routers.put(mode, router);
+		}
+		return router;
+	}
+
+	/**
+	 * Sets the maximum number of routes remembered between queries.
+	 * 
+	 * @param capacity
+	 *            The number of routes to cache, 0 disables the cache.
+	 */
+	public void setRouteCacheCapacity(int capacity) {
+		routeCache.setCapacity(capacity);
+	}
+
+	/**
+	 * Returns the cache of generated routes, mainly to read its hit, miss and
+	 * eviction counters.
+	 * 
+	 * @return The route cache.
+	 */
+	public RouteCache getRouteCache() {
+		return routeCache;
+	}
+
+	/**
+	 * Sets the routing mode used by queries that don't specify one.
+	 * 
+	 * @param mode
+	 *            The default search strategy.
+	 */
+	public void setRoutingMode(RoutingMode mode) {
+		routingMode = mode;
 	}
 
 	/**
@@ -187,17 +336,10 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 	 */
 
 	public Node getClosestLocation(double lat, double lon) {
-		Node givenNode = new Node(lat, lon);
-		List<Node> nodes = model.getNodes();
-		double minDistance = Double.POSITIVE_INFINITY;
-		Node shortestNode = null;
-		for (Node node : nodes) {
-			if (node.distanceTo(givenNode) < minDistance) {
-				minDistance = node.distanceTo(givenNode);
-				shortestNode = node;
-			}
-		}
-		return shortestNode;
+		if (nodeIndex == null)
+			return null;
+		int closest = nodeIndex.nearest(lat, lon);
+		return closest < 0 ? null : nodeIndex.getRoadGraph().getNode(closest);
 	}
 
 	/**
@@ -220,58 +362,34 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 	 */
 
 	public boolean onCourse(Node node) {
-		//Transform into map display coordinates.
-		Node center = model.getCenterNode();
-		double latitudeOffset = center.getLatitude();
-		double longitudeOffset = center.getLongitude();
-		double adjustedLat = node.getLatitude() - latitudeOffset;
-		double adjustedLon = node.getLongitude() - longitudeOffset;
-		adjustedLat *= -1;
-		double convertedLat = node.getLatitude() * (Math.PI / 180.0);
-		adjustedLon *= MapDisplay.PIXELS_PER_DEGREE * Math.cos(convertedLat);
-		adjustedLat *= MapDisplay.PIXELS_PER_DEGREE;
-		Point2D.Double currentLoc = new Point2D.Double( adjustedLon,  adjustedLat);
-		if (generatedPath != null) {
-			List<Node> wayPoints = generatedPath.getNodes();
-			for (int i = 0; i < wayPoints.size() - 1; i++) {
-				double latitude1 = wayPoints.get(i).getLatitude();
-				double longitude1 = wayPoints.get(i).getLongitude();
-				double latitude2 = wayPoints.get(i+1).getLatitude();
-				double longitude2 = wayPoints.get(i+1).getLongitude();
-				double adjustedLat1 = latitude1 - latitudeOffset;
-				double adjustedLat2 = latitude2 - latitudeOffset;
-				double adjustedLon1 = longitude1 - longitudeOffset;
-				double adjustedLon2 = longitude2 - longitudeOffset;
-				adjustedLat1 *= -1;
-				adjustedLat2 *= -1;
-				double lat1Rad = Math.toRadians(latitude1);
-				double lat2Rad = Math.toRadians(latitude2);
-				adjustedLon1 *= MapDisplay.PIXELS_PER_DEGREE * Math.cos(lat1Rad);
-				adjustedLon2 *= MapDisplay.PIXELS_PER_DEGREE * Math.cos(lat2Rad);
-				adjustedLat1 *= MapDisplay.PIXELS_PER_DEGREE;
-				adjustedLat2 *= MapDisplay.PIXELS_PER_DEGREE;
-				Point2D pointOne = new Point2D.Double(adjustedLon1, adjustedLat1);
-				Point2D pointTwo = new Point2D.Double(adjustedLon2, adjustedLat2);
-				Line2D.Double line = new Line2D.Double(pointOne, pointTwo);
-				if(line.ptSegDist(currentLoc) < OUT_OF_RANGE)
-					{
-					return true;
-					};
-			}
-
+		if (generatedPath == null) {
+			return false;
+		}
+		// The route is only projected again when it changes, the tracker then
+		// tests a few segments around the last match.
+		if (routeTracker == null || routeTracker.getRoute() != generatedPath) {
+			routeTracker = new RouteTracker(generatedPath, model.getCenterNode());
 		}
-		return false;
+		return routeTracker.isOnCourse(node.getLatitude(), node.getLongitude(), OUT_OF_RANGE);
 	}
 
 	/**
 	 * Remove all traces of the old map data model from this directions
 	 * generator, this includes clearing any drive there options selected, and
-	 * loading in a new MapDataModel
+	 * loading in the road graph of the new MapDataModel
 	 */
 	@Override
 	public void reset() {
+		graph = model.getRoadGraph();
+		nodeIndex = model.getNodeIndex();
+		segmentIndex = model.getSegmentIndex();
+		routers.clear();
+		routeCache.clear();
 		generatedPath = null;
 		driveThere = false;
+		driveDestination = null;
+		destinationTree = null;
+		routeTracker = null;
 
 	}
 
@@ -288,17 +406,21 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 			Node currentLocation = new Node(ev.getLatitude(), ev.getLongitude());
 			if (driveDestination != null) {
 				display.setIsDriving(true);
-				if (!onCourse(currentLocation) && !(generatedPath == null)) {
+				boolean onCourse = onCourse(currentLocation);
+				if (!onCourse && !(generatedPath == null)) {
 					JOptionPane optionPane = new JOptionPane("Off Course, rerouting. . .");
 					JDialog dialog = optionPane.createDialog("Off Course");
 					dialog.setModalityType(Dialog.ModalityType.MODELESS);
 					dialog.setVisible(true);
 				}
-				if ((generatedPath == null) || !onCourse(currentLocation)) {
-					Node closestLocation = getClosestLocation(ev.getLatitude(), ev.getLongitude());
-					generateDirections(closestLocation, driveDestination);
-					generatedPath.addHead(currentLocation);
-					display.setDirectionsPath(generatedPath);
+				if (!onCourse) {
+					if (rerouteFrom(ev.getLatitude(), ev.getLongitude()) != null) {
+						// Generated paths are read only since they may be
+						// cached, so the current location goes on a copy.
+						generatedPath = new Way(generatedPath);
+						generatedPath.addHead(currentLocation);
+						display.setDirectionsPath(generatedPath);
+					}
 				}
 				//Check if we are close to our destination to a certain point, if we are, then stop the drive there mode.
 				if (currentLocation.distanceTo(driveDestination) <= DESTINATION_RANGE)
@@ -338,6 +460,11 @@ public class DirectionsGenerator implements DataModelObserver, GPSListener {
 	 */
 	public void driveDestination(Node destination) {
 		driveDestination = destination;
+		destinationTree = null;
+		int root = (graph == null || destination == null) ? -1 : graph.ordinalOf(destination);
+		if (root >= 0) {
+			destinationTree = new ShortestPathTree(graph, root);
+		}
 	}
 
 }
@@ -0,0 +1,85 @@
+/**
+ * Answers shortest path queries with a ContractionHierarchy. Both the start and the destination search only upward
+ * edges, towards more important nodes, so each side settles few nodes. The best path found where the two searches
+ * meet is unpacked back into the nodes of the original road graph.
+ * @author Jonathan Yin
+ *
+ */
+public class HierarchyRouter implements Router {
+
+	private final ContractionHierarchy hierarchy;
+	private final DijkstraRouter forward;
+	private final DijkstraRouter backward;
+	private int settledCount;
+
+	public HierarchyRouter(ContractionHierarchy hierarchy)
+	{
+		this.hierarchy = hierarchy;
+		forward = new DijkstraRouter(hierarchy.getRoadGraph());
+		backward = new DijkstraRouter(hierarchy.getRoadGraph());
+	}
+
+	@Override
+	public int[] findPath(int source, int target)
+	{
+		forward.reset();
+		backward.reset();
+		settledCount = 0;
+		if (source == target)
+			return new int[] { source };
+		forward.setDistance(source, 0, -1);
+		forward.queue.offer(source, 0);
+		backward.setDistance(target, 0, -1);
+		backward.queue.offer(target, 0);
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = -1;
+		// Unlike a plain bidirectional search, each side keeps going until its own queue can't improve on the best
+		// path, since the searches may only meet at the most important node of the path.
+		while (true) {
+			boolean forwardOpen = forward.queue.peekKey() < best;
+			boolean backwardOpen = backward.queue.peekKey() < best;
+			if (!forwardOpen && !backwardOpen)
+				break;
+			boolean isForward = forwardOpen && (!backwardOpen || forward.queue.peekKey() <= backward.queue.peekKey());
+			DijkstraRouter side = isForward ? forward : backward;
+			DijkstraRouter other = isForward ? backward : forward;
+			int node = side.queue.poll();
+			settledCount++;
+			double distance = side.distances[node];
+			double through = distance + other.distances[node];
+			if (through < best) {
+				best = through;
+				meeting = node;
+			}
+			for (int edge = hierarchy.firstEdge(node); edge < hierarchy.endEdge(node); edge++) {
+				int neighbor = hierarchy.target(edge);
+				double distanceSum = distance + hierarchy.weight(edge);
+				if (distanceSum < side.distances[neighbor]) {
+					side.setDistance(neighbor, distanceSum, node);
+					side.queue.offer(neighbor, distanceSum);
+				}
+			}
+		}
+		if (meeting < 0)
+			return null;
+		int[] head = forward.buildPath(meeting);
+		int length = head.length;
+		for (int node = backward.predecessors[meeting]; node >= 0; node = backward.predecessors[node])
+			length++;
+		int[] packed = new int[length];
+		System.arraycopy(head, 0, packed, 0, head.length);
+		int index = head.length;
+		for (int node = backward.predecessors[meeting]; node >= 0; node = backward.predecessors[node])
+			packed[index++] = node;
+		return hierarchy.unpack(packed);
+	}
+
+	/**
+	 * Returns the number of nodes settled by both sides of the last search.
+	 * @return The number of nodes removed from either queue.
+	 */
+	public int getSettledCount()
+	{
+		return settledCount;
+	}
+}
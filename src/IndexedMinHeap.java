@@ -0,0 +1,206 @@
+import java.util.NoSuchElementException;
+
+/**
+ * A d-ary min heap of node ordinals keyed by primitive double priorities. The heap remembers where each ordinal is
+ * stored, so the key of a queued ordinal can be lowered in place (decrease-key) instead of inserting a duplicate.
+ * Used as the priority queue of the shortest path searches.
+ * @author Jonathan Yin
+ *
+ */
+public class IndexedMinHeap {
+
+	private static final int DEFAULT_ARITY = 4;
+	private final int arity;
+	// Ordinals in heap order.
+	private int[] heap;
+	// Position of each ordinal in the heap or -1 if it is not queued.
+	private int[] positions;
+	// Key of each ordinal, only meaningful while the ordinal is queued.
+	private double[] keys;
+	private int size;
+
+	/**
+	 * Creates a 4-ary heap that can hold the ordinals 0 up to capacity - 1.
+	 * @param capacity The number of ordinals this heap can hold.
+	 */
+	public IndexedMinHeap(int capacity)
+	{
+		this(capacity, DEFAULT_ARITY);
+	}
+
+	/**
+	 * Creates a heap that can hold the ordinals 0 up to capacity - 1.
+	 * @param capacity The number of ordinals this heap can hold.
+	 * @param arity The number of children of each heap entry, 2 gives a binary heap.
+	 */
+	public IndexedMinHeap(int capacity, int arity)
+	{
+		if (arity < 2)
+			throw new IllegalArgumentException("Heap arity must be at least 2");
+		this.arity = arity;
+		heap = new int[capacity];
+		positions = new int[capacity];
+		keys = new double[capacity];
+		for (int i = 0; i < capacity; i++)
+			positions[i] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Returns whether the heap has no ordinals queued.
+	 * @return true if the heap is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Returns the number of ordinals queued.
+	 * @return The number of ordinals in the heap.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Determines whether an ordinal is currently queued.
+	 * @param ordinal The ordinal to test.
+	 * @return true if the ordinal is in the heap.
+	 */
+	public boolean contains(int ordinal)
+	{
+		return positions[ordinal] >= 0;
+	}
+
+	/**
+	 * Returns the key of a queued ordinal.
+	 * @param ordinal The queued ordinal.
+	 * @return The key the ordinal is queued with.
+	 */
+	public double getKey(int ordinal)
+	{
+		return keys[ordinal];
+	}
+
+	/**
+	 * Returns the smallest key in the heap without removing it.
+	 * @return The smallest key, or positive infinity if the heap is empty.
+	 */
+	public double peekKey()
+	{
+		return size == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+	}
+
+	/**
+	 * Returns the ordinal with the smallest key without removing it.
+	 * @return The ordinal at the top of the heap.
+	 */
+	public int peek()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		return heap[0];
+	}
+
+	/**
+	 * Queues an ordinal, or lowers its key if it is already queued with a larger one.
+	 * @param ordinal The ordinal to queue.
+	 * @param key The key of the ordinal.
+	 * @return true if the heap changed.
+	 */
+	public boolean offer(int ordinal, double key)
+	{
+		int position = positions[ordinal];
+		if (position < 0) {
+			keys[ordinal] = key;
+			heap[size] = ordinal;
+			positions[ordinal] = size;
+			siftUp(size++);
+			return true;
+		}
+		if (key < keys[ordinal]) {
+			keys[ordinal] = key;
+			siftUp(position);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the ordinal with the smallest key.
+	 * @return The ordinal that was removed.
+	 */
+	public int poll()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		int min = heap[0];
+		positions[min] = -1;
+		size--;
+		if (size > 0) {
+			int last = heap[size];
+			heap[0] = last;
+			positions[last] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	/**
+	 * Removes every ordinal from the heap. This only costs time proportional to the number of ordinals queued.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < size; i++)
+			positions[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void siftUp(int position)
+	{
+		int ordinal = heap[position];
+		double key = keys[ordinal];
+		while (position > 0) {
+			int parent = (position - 1) / arity;
+			int parentOrdinal = heap[parent];
+			if (keys[parentOrdinal] <= key)
+				break;
+			heap[position] = parentOrdinal;
+			positions[parentOrdinal] = position;
+			position = parent;
+		}
+		heap[position] = ordinal;
+		positions[ordinal] = position;
+	}
+
+	private void siftDown(int position)
+	{
+		int ordinal = heap[position];
+		double key = keys[ordinal];
+		while (true) {
+			int firstChild = position * arity + 1;
+			if (firstChild >= size)
+				break;
+			int lastChild = Math.min(firstChild + arity, size);
+			int smallest = firstChild;
+			double smallestKey = keys[heap[firstChild]];
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				double childKey = keys[heap[child]];
+				if (childKey < smallestKey) {
+					smallest = child;
+					smallestKey = childKey;
+				}
+			}
+			if (smallestKey >= key)
+				break;
+			int smallestOrdinal = heap[smallest];
+			heap[position] = smallestOrdinal;
+			positions[smallestOrdinal] = position;
+			position = smallest;
+		}
+		heap[position] = ordinal;
+		positions[ordinal] = position;
+	}
+}
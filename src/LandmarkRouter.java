@@ -0,0 +1,35 @@
+/**
+ * Finds shortest paths with A* using the landmark lower bounds of a Landmarks table as the estimate (ALT). When the
+ * destination is not connected to the landmarks, the haversine distance used by the AStarRouter is used instead for
+ * the whole search, so the estimate stays consistent and the paths found are as short as Dijkstra's.
+ * @author Jonathan Yin
+ *
+ */
+public class LandmarkRouter extends DijkstraRouter {
+
+	private final Landmarks landmarks;
+	private int destinationOrdinal = -1;
+	private double destinationLatitude;
+	private double destinationLongitude;
+	private boolean destinationCovered;
+
+	public LandmarkRouter(Landmarks landmarks)
+	{
+		super(landmarks.getRoadGraph());
+		this.landmarks = landmarks;
+	}
+
+	@Override
+	protected double estimate(int node, int target)
+	{
+		if (target != destinationOrdinal) {
+			destinationOrdinal = target;
+			destinationLatitude = graph.getLatitude(target);
+			destinationLongitude = graph.getLongitude(target);
+			destinationCovered = landmarks.covers(target);
+		}
+		if (destinationCovered)
+			return landmarks.lowerBound(node, target);
+		return Node.distance(graph.getLatitude(node), graph.getLongitude(node), destinationLatitude, destinationLongitude);
+	}
+}
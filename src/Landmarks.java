@@ -0,0 +1,193 @@
+import java.util.Arrays;
+
+/**
+ * Precomputed distances from a few landmark nodes to every node of a RoadGraph, used for ALT (A*, landmarks and the
+ * triangle inequality) routing. For any landmark L the triangle inequality gives |d(L, t) - d(L, v)| as a lower bound
+ * on the distance from v to t, which on a road network is much closer to the real distance than the straight line.
+ *
+ * Landmarks are picked by farthest point selection within the largest connected part of the graph: each new landmark
+ * is the node farthest from all the landmarks picked so far. The distances are stored node by node in a single
+ * primitive array so that the bounds of one node are read together.
+ * @author Jonathan Yin
+ *
+ */
+public class Landmarks {
+
+	private final RoadGraph graph;
+	private final int[] landmarks;
+	// Distance from landmark l to node v is stored at distances[v * landmarks.length + l].
+	private final double[] distances;
+
+	/**
+	 * Selects landmarks and computes their distances to every node.
+	 * @param graph The road graph.
+	 * @param count The number of landmarks to pick, fewer are used if the graph is smaller than that.
+	 */
+	public Landmarks(RoadGraph graph, int count)
+	{
+		this.graph = graph;
+		int size = graph.size();
+		boolean[] candidates = largestComponent();
+		int candidateCount = 0;
+		for (int node = 0; node < size; node++) {
+			if (candidates[node])
+				candidateCount++;
+		}
+		count = Math.min(count, candidateCount);
+		landmarks = new int[count];
+		distances = new double[size * count];
+		if (count == 0)
+			return;
+		DijkstraRouter router = new DijkstraRouter(graph);
+		// Distance from each node to its closest landmark so far, the next landmark is the node where this is largest.
+		double[] closest = new double[size];
+		Arrays.fill(closest, Double.POSITIVE_INFINITY);
+		int start = 0;
+		while (!candidates[start])
+			start++;
+		// The first landmark is the node farthest from an arbitrary start, which lands it on the edge of the map.
+		router.searchFrom(start);
+		int next = farthest(router, candidates);
+		for (int l = 0; l < count; l++) {
+			landmarks[l] = next;
+			router.searchFrom(next);
+			for (int node = 0; node < size; node++) {
+				double distance = router.getDistance(node);
+				distances[node * count + l] = distance;
+				if (distance < closest[node])
+					closest[node] = distance;
+			}
+			next = -1;
+			double farthestDistance = -1;
+			for (int node = 0; node < size; node++) {
+				if (candidates[node] && closest[node] > farthestDistance) {
+					farthestDistance = closest[node];
+					next = node;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of landmarks.
+	 * @return The number of landmarks distances are stored for.
+	 */
+	public int size()
+	{
+		return landmarks.length;
+	}
+
+	/**
+	 * Returns the ordinal of a landmark.
+	 * @param index The index of the landmark.
+	 * @return The ordinal of the landmark node.
+	 */
+	public int getLandmark(int index)
+	{
+		return landmarks[index];
+	}
+
+	/**
+	 * Returns the road graph these landmarks belong to.
+	 * @return The road graph the distances were computed on.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * Determines whether the landmarks can bound distances to a node, which is the case for the nodes connected to
+	 * the landmarks.
+	 * @param ordinal The ordinal of the node.
+	 * @return true if the distance from the landmarks to this node is known.
+	 */
+	public boolean covers(int ordinal)
+	{
+		return landmarks.length > 0 && distances[ordinal * landmarks.length] != Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Computes the triangle inequality lower bound on the distance between two nodes. Both nodes should be covered
+	 * by the landmarks.
+	 * @param from The ordinal of the first node.
+	 * @param to The ordinal of the second node.
+	 * @return The largest lower bound given by any of the landmarks.
+	 */
+	public double lowerBound(int from, int to)
+	{
+		int count = landmarks.length;
+		int fromRow = from * count;
+		int toRow = to * count;
+		double bound = 0;
+		for (int l = 0; l < count; l++) {
+			double difference = distances[toRow + l] - distances[fromRow + l];
+			if (difference < 0)
+				difference = -difference;
+			if (difference > bound)
+				bound = difference;
+		}
+		// Nodes not connected to the landmarks give an undefined difference, they are never reached from covered ones.
+		return bound == Double.POSITIVE_INFINITY || bound != bound ? 0 : bound;
+	}
+
+	/**
+	 * Finds the candidate reached by the last search that is farthest from its source.
+	 */
+	private int farthest(DijkstraRouter router, boolean[] candidates)
+	{
+		int farthest = -1;
+		double farthestDistance = -1;
+		for (int node = 0; node < graph.size(); node++) {
+			double distance = router.getDistance(node);
+			if (candidates[node] && distance != Double.POSITIVE_INFINITY && distance > farthestDistance) {
+				farthestDistance = distance;
+				farthest = node;
+			}
+		}
+		return farthest;
+	}
+
+	/**
+	 * Marks the nodes of the largest connected part of the graph, the only ones landmarks are picked from so that
+	 * none are wasted on small disconnected pieces.
+	 */
+	private boolean[] largestComponent()
+	{
+		int size = graph.size();
+		int[] components = new int[size];
+		Arrays.fill(components, -1);
+		int[] stack = new int[size];
+		int largest = -1;
+		int largestSize = 0;
+		int component = 0;
+		for (int root = 0; root < size; root++) {
+			if (components[root] >= 0 || graph.firstEdge(root) == graph.endEdge(root))
+				continue;
+			int componentSize = 0;
+			int top = 0;
+			stack[top++] = root;
+			components[root] = component;
+			while (top > 0) {
+				int node = stack[--top];
+				componentSize++;
+				for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+					int neighbor = graph.target(edge);
+					if (components[neighbor] < 0) {
+						components[neighbor] = component;
+						stack[top++] = neighbor;
+					}
+				}
+			}
+			if (componentSize > largestSize) {
+				largestSize = componentSize;
+				largest = component;
+			}
+			component++;
+		}
+		boolean[] inLargest = new boolean[size];
+		for (int node = 0; node < size; node++)
+			inLargest[node] = components[node] == largest && largest >= 0;
+		return inLargest;
+	}
+}
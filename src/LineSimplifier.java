@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+/**
+ * Simplifies polylines with the Douglas-Peucker algorithm: the point farthest from the segment between the first and
+ * last point is kept if it is farther than the tolerance, and both halves are simplified the same way, otherwise every
+ * point in between is dropped. The result never strays from the original line by more than the tolerance. Halves are
+ * kept on a stack rather than recursed into, so long ways can't overflow the call stack.
+ * @author Jonathan Yin
+ *
+ */
+public class LineSimplifier {
+
+	private LineSimplifier()
+	{
+	}
+
+	/**
+	 * Picks the points of a polyline to keep.
+	 * @param xs The x coordinates of the points.
+	 * @param ys The y coordinates of the points.
+	 * @param count The number of points, the coordinates of the others are ignored.
+	 * @param tolerance The greatest distance the simplified line may be from the points dropped.
+	 * @return The indices of the points kept in increasing order, always the first and last one.
+	 */
+	public static int[] simplify(float[] xs, float[] ys, int count, double tolerance)
+	{
+		if (count <= 2) {
+			int[] all = new int[count];
+			for (int i = 0; i < count; i++)
+				all[i] = i;
+			return all;
+		}
+		boolean[] keep = new boolean[count];
+		keep[0] = keep[count - 1] = true;
+		int kept = 2;
+		double squaredTolerance = tolerance * tolerance;
+		// Pairs of first and last index of the parts left to simplify.
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			int farthest = -1;
+			double farthestDistance = squaredTolerance;
+			for (int i = first + 1; i < last; i++) {
+				double distance = squaredDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+				if (distance > farthestDistance) {
+					farthest = i;
+					farthestDistance = distance;
+				}
+			}
+			if (farthest < 0)
+				continue;
+			keep[farthest] = true;
+			kept++;
+			if (top + 4 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			if (farthest - first > 1) {
+				stack[top++] = first;
+				stack[top++] = farthest;
+			}
+			if (last - farthest > 1) {
+				stack[top++] = farthest;
+				stack[top++] = last;
+			}
+		}
+		int[] indices = new int[kept];
+		int next = 0;
+		for (int i = 0; i < count; i++) {
+			if (keep[i])
+				indices[next++] = i;
+		}
+		return indices;
+	}
+
+	/**
+	 * Returns the squared distance from a point to a segment, or to its start if the segment is a single point as it
+	 * is for closed ways.
+	 */
+	private static double squaredDistance(double x, double y, double startX, double startY, double endX, double endY)
+	{
+		double dx = endX - startX;
+		double dy = endY - startY;
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : ((x - startX) * dx + (y - startY) * dy) / length;
+		t = Math.max(0, Math.min(1, t));
+		double offsetX = x - (startX + t * dx);
+		double offsetY = y - (startY + t * dy);
+		return offsetX * offsetX + offsetY * offsetY;
+	}
+}
@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * Decides which parts of an OSM file are loaded. A profile can limit the map to a bounding box, keep only the ways
+ * carrying one of a few tag keys, and drop untagged nodes that are not part of any kept way. Nodes outside the box and
+ * ways without a wanted key are skipped while the file is parsed, and of the tags only the wanted keys and names are
+ * kept, so none of them take up memory. Whether a node is part of a way is only known once the ways, which follow
+ * the nodes in a file, are parsed, so unused nodes are removed afterwards.
+ * @author Jonathan Yin
+ *
+ */
+public class LoadProfile {
+
+	/** The keys of the roads, waterways and boundaries MapDisplay draws in a style of their own. */
+	public static final String[] DISPLAYED_KEYS = { "highway", "waterway", "admin_level" };
+
+	/** Loads every node, way and tag of a file. */
+	public static final LoadProfile EVERYTHING = new LoadProfile(-90, -180, 90, 180, null, false);
+
+	/**
+	 * Loads only the roads, waterways and boundaries with their nodes, along with the named nodes. MapDisplay also
+	 * draws ways without any of these keys, as local roads, and those are left out.
+	 */
+	public static final LoadProfile DISPLAYED = new LoadProfile(-90, -180, 90, 180, DISPLAYED_KEYS, true);
+
+	private final double minLatitude;
+	private final double minLongitude;
+	private final double maxLatitude;
+	private final double maxLongitude;
+	// Sorted keys a way needs one of to be kept, null to keep every way and tag.
+	private final String[] wayKeys;
+	private final boolean dropUnusedNodes;
+
+	/**
+	 * Creates a profile.
+	 * @param minLatitude The southern edge of the box nodes are kept in.
+	 * @param minLongitude The western edge of the box.
+	 * @param maxLatitude The northern edge of the box.
+	 * @param maxLongitude The eastern edge of the box.
+	 * @param wayKeys The keys a way needs at least one of to be kept, also the only tags kept besides names. null to
+	 *            keep every way and every tag.
+	 * @param dropUnusedNodes true to drop nodes that have no tags left and are not part of a kept way.
+	 */
+	public LoadProfile(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+			String[] wayKeys, boolean dropUnusedNodes)
+	{
+		if (minLatitude > maxLatitude || minLongitude > maxLongitude)
+			throw new IllegalArgumentException("Empty bounding box");
+		this.minLatitude = minLatitude;
+		this.minLongitude = minLongitude;
+		this.maxLatitude = maxLatitude;
+		this.maxLongitude = maxLongitude;
+		if (wayKeys != null) {
+			this.wayKeys = wayKeys.clone();
+			Arrays.sort(this.wayKeys);
+		} else {
+			this.wayKeys = null;
+		}
+		this.dropUnusedNodes = dropUnusedNodes;
+	}
+
+	/**
+	 * Determines whether a node is in the bounding box.
+	 * @param latitude The latitude of the node.
+	 * @param longitude The longitude of the node.
+	 * @return true if the node is kept.
+	 */
+	public boolean contains(double latitude, double longitude)
+	{
+		return latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude
+				&& longitude <= maxLongitude;
+	}
+
+	/**
+	 * Determines whether the profile cuts the map to a box smaller than the whole world.
+	 * @return true if nodes can be dropped for their position.
+	 */
+	public boolean isBounded()
+	{
+		return minLatitude > -90 || minLongitude > -180 || maxLatitude < 90 || maxLongitude < 180;
+	}
+
+	/**
+	 * Determines whether a tag is kept.
+	 * @param key The key of the tag.
+	 * @return true if the tag is stored with its node or way.
+	 */
+	public boolean keepsTag(String key)
+	{
+		return wayKeys == null || key.equals("name") || Arrays.binarySearch(wayKeys, key) >= 0;
+	}
+
+	/**
+	 * Determines whether a way is kept for its tags.
+	 * @param tags The keys and values of the tags of the way, alternating.
+	 * @return true if the way is kept.
+	 */
+	public boolean keepsWay(String[] tags)
+	{
+		if (wayKeys == null)
+			return true;
+		for (int i = 0; i < tags.length; i += 2) {
+			if (Arrays.binarySearch(wayKeys, tags[i]) >= 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Determines whether nodes that are not part of a way and have no tags are dropped.
+	 * @return true if unused nodes are dropped.
+	 */
+	public boolean dropsUnusedNodes()
+	{
+		return dropUnusedNodes;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof LoadProfile))
+			return false;
+		LoadProfile profile = (LoadProfile) other;
+		return minLatitude == profile.minLatitude && minLongitude == profile.minLongitude
+				&& maxLatitude == profile.maxLatitude && maxLongitude == profile.maxLongitude
+				&& Arrays.equals(wayKeys, profile.wayKeys) && dropUnusedNodes == profile.dropUnusedNodes;
+	}
+
+	/**
+	 * Returns a hash of the profile that stays the same from one run to the next, which snapshots record to tell
+	 * which profile they were loaded with.
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hash = Double.hashCode(minLatitude);
+		hash = hash * 31 + Double.hashCode(minLongitude);
+		hash = hash * 31 + Double.hashCode(maxLatitude);
+		hash = hash * 31 + Double.hashCode(maxLongitude);
+		hash = hash * 31 + Arrays.hashCode(wayKeys);
+		return hash * 31 + (dropUnusedNodes ? 1 : 0);
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to int values kept in two primitive arrays with open addressing and linear probing, so
+ * that mapping millions of OSM ids to ordinals costs twelve bytes or so per entry instead of a boxed Long, a boxed
+ * Integer and a HashMap entry. Values are stored plus one so that 0 marks an empty slot.
+ * @author Jonathan Yin
+ *
+ */
+public class LongIntHashMap {
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	public LongIntHashMap()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates a map sized for a number of entries.
+	 * @param expected The number of entries expected, the map grows past it if needed.
+	 */
+	public LongIntHashMap(int expected)
+	{
+		int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Returns the number of keys in the map.
+	 * @return The number of entries.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the value of a key.
+	 * @param key The key to look up.
+	 * @return The value of the key, or -1 if the key is not in the map.
+	 */
+	public int get(long key)
+	{
+		for (int slot = slot(key); values[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return values[slot] - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Maps a key to a value, replacing any value it had.
+	 * @param key The key.
+	 * @param value The value, which must not be negative.
+	 */
+	public void put(long key, int value)
+	{
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] = value + 1;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value + 1;
+		// Kept at most half full so that probe sequences stay short.
+		if (++size * 2 > keys.length)
+			grow();
+	}
+
+	/**
+	 * Removes every entry from the map.
+	 */
+	public void clear()
+	{
+		Arrays.fill(values, 0);
+		size = 0;
+	}
+
+	private int slot(long key)
+	{
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == 0)
+				continue;
+			int slot = slot(oldKeys[i]);
+			while (values[slot] != 0)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+}
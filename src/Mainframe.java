@@ -38,6 +38,8 @@ public class Mainframe {
 
 	public Mainframe() {
 		datamodel = new MapDataModel();
+		datamodel.setParserMode(MapDataModel.ParserMode.PARALLEL);
+		datamodel.setSnapshotsEnabled(true);
 	}
 
 	/**
@@ -61,24 +63,35 @@ public class Mainframe {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
 				JFileChooser fileChooser = new JFileChooser();
-				FileNameExtensionFilter filter = new FileNameExtensionFilter("OSM file", "osm");
+				FileNameExtensionFilter filter = new FileNameExtensionFilter("OSM file", "osm", "gz", "bz2", "pbf");
 				fileChooser.setFileFilter(filter);
 				// Only allow one file at a time
 				fileChooser.setMultiSelectionEnabled(false);
 				int option = fileChooser.showOpenDialog(frame);
 				if (option == JFileChooser.APPROVE_OPTION) {
 					File ChosenFile = fileChooser.getSelectedFile();
+					// PBF files are binary, everything else is read as XML.
+					boolean isPbf = ChosenFile.getName().toLowerCase().endsWith(".pbf");
 					try {
-						datamodel.parseFile(ChosenFile);
+						if (isPbf)
+							datamodel.parsePbfFile(ChosenFile);
+						else
+							datamodel.parseFile(ChosenFile);
 						datamodel.notifyObservers();
 						if (gps != null)
 						{
 							gps.removeGPSListener(display);
 							gps.removeGPSListener(generator);
+							gps = null;
+						}
+						// The GPS simulator reads its roads from a plain XML file,
+						// so there is no simulated drive over a PBF or compressed
+						// map.
+						if (!isPbf && Compression.detect(ChosenFile) == Compression.NONE) {
+							gps = new GPSDevice(ChosenFile.getPath());
+							gps.addGPSListener(display);
+							gps.addGPSListener(generator);
 						}
-						gps = new GPSDevice(ChosenFile.getPath());
-						gps.addGPSListener(display);
-						gps.addGPSListener(generator);
 						frame.repaint();
 					} catch (Exception e) {
 						JOptionPane.showMessageDialog(frame, "Something went wrong with the fileParsing, check for "
@@ -152,6 +165,7 @@ public class Mainframe {
 		display.addMouseWheelListener(mouseAdapter);
 		display.addMouseListener(mouseAdapter);
 		datamodel.addDataObserver(display);
+		datamodel.addDataObserver(generator);
 		JPanel directionsInputter = new JPanel();
 		directionsInputter.setLayout(new GridBagLayout());
 		GridBagConstraints c = new GridBagConstraints();
@@ -286,7 +300,7 @@ public class Mainframe {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				try {
-					Node dest = (Node) datamodel.getDataPoint(endField.getText());
+					Node dest = datamodel.getNode(endField.getText());
 					generator.driveDestination(dest);
 					generator.driveThere();
 					JOptionPane.showMessageDialog(frame, "Destination successfully set!");
@@ -0,0 +1,405 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the nodes, ways and tags reported by a parser of an OSM file into the structures the MapDataModel keeps.
+ * Parsers only have to recognise elements and call the matching methods in file order: startNode, addTag and endNode
+ * for a node, startWay, addWayNode, addTag and endWay for a way. Tags outside of a node or a way are ignored, as are
+ * references to nodes that are not in the file.
+ *
+ * A file can also be parsed in chunks by several builders at once. Such builders defer their ways, since the nodes of
+ * a way may be in another chunk, and merge puts the chunks back together in file order and then resolves the node
+ * references of every way.
+ *
+ * A LoadProfile decides what is built at all. Nodes outside its box, tags it doesn't want and ways without any of its
+ * keys are skipped as they are reported. A way that leaves the box is cut where it does: every run of consecutive nodes
+ * inside the box becomes a way of its own with the id and tags of the original, so that no segment is ever drawn or
+ * routed between nodes that aren't next to each other in the file. Runs of a single node are dropped. Nodes that turn
+ * out to be unused once every way is known are dropped by removeUnusedNodes.
+ * @author Jonathan Yin
+ *
+ */
+public class MapDataBuilder {
+
+	// Stands for a node of a way that is outside the box of the profile.
+	private static final int CUT = -1;
+
+	private final NodeStore nodeStore;
+	private final List<Way> ways;
+	private final Map<String, Integer> nodeNames;
+	private final Map<String, Way> wayIds;
+	private final Map<String, Way> wayNames;
+	// Whether ways keep the ids of their nodes until merge instead of resolving them right away.
+	private final boolean deferReferences;
+	private final List<PendingWay> pendingWays;
+	private final LoadProfile profile;
+	// Ordinal of the node being built, or -1 outside of a node.
+	private int currentNode = -1;
+	// Id, node ordinals and tags of the way being built, the way is created once all of its nodes are known. Nodes
+	// left out by a bounded profile are marked with CUT.
+	private String currentWay;
+	private int[] wayOrdinals = new int[64];
+	private long[] wayRefs;
+	private int wayLength;
+	private List<String> wayTags = new ArrayList<String>();
+
+	public MapDataBuilder()
+	{
+		this(new NodeStore());
+	}
+
+	/**
+	 * Creates a builder that adds nodes to a given store.
+	 * @param nodeStore The store for the nodes, usually empty.
+	 */
+	public MapDataBuilder(NodeStore nodeStore)
+	{
+		this(nodeStore, false);
+	}
+
+	/**
+	 * Creates a builder that adds nodes to a given store.
+	 * @param nodeStore The store for the nodes, usually empty.
+	 * @param deferReferences true to build one chunk of a file, whose ways are only created by merge.
+	 */
+	public MapDataBuilder(NodeStore nodeStore, boolean deferReferences)
+	{
+		this(nodeStore, deferReferences, LoadProfile.EVERYTHING);
+	}
+
+	/**
+	 * Creates a builder that adds nodes to a given store and only builds what a profile asks for.
+	 * @param nodeStore The store for the nodes, usually empty.
+	 * @param deferReferences true to build one chunk of a file, whose ways are only created by merge.
+	 * @param profile The parts of the file to build.
+	 */
+	public MapDataBuilder(NodeStore nodeStore, boolean deferReferences, LoadProfile profile)
+	{
+		this.nodeStore = nodeStore;
+		this.deferReferences = deferReferences;
+		this.profile = profile;
+		ways = new ArrayList<Way>();
+		nodeNames = new HashMap<String, Integer>();
+		wayIds = new HashMap<String, Way>();
+		wayNames = new HashMap<String, Way>();
+		pendingWays = new ArrayList<PendingWay>();
+		if (deferReferences)
+			wayRefs = new long[64];
+	}
+
+	/**
+	 * Puts the chunks of a file back together. The nodes of the chunks are appended in order, so a node gets the same
+	 * ordinal it would have had if the file was parsed in one go, then the ways of the chunks are created from the
+	 * merged nodes. Creating the ways is spread over the common fork/join pool.
+	 * @param chunks Builders that deferred their references, in file order. Their stores must share one tag
+	 *            dictionary and their profile.
+	 * @return A builder holding the whole file.
+	 */
+	public static MapDataBuilder merge(List<MapDataBuilder> chunks)
+	{
+		int size = 0;
+		for (MapDataBuilder chunk : chunks)
+			size += chunk.nodeStore.size();
+		TagDictionary dictionary = chunks.isEmpty() ? new TagDictionary() : chunks.get(0).nodeStore.getTagDictionary();
+		LoadProfile profile = chunks.isEmpty() ? LoadProfile.EVERYTHING : chunks.get(0).profile;
+		MapDataBuilder merged = new MapDataBuilder(new NodeStore(size, dictionary), false, profile);
+		for (MapDataBuilder chunk : chunks) {
+			int offset = merged.nodeStore.size();
+			merged.nodeStore.append(chunk.nodeStore);
+			for (Map.Entry<String, Integer> name : chunk.nodeNames.entrySet())
+				merged.nodeNames.put(name.getKey(), name.getValue() + offset);
+		}
+		// Second pass, only now are all the nodes a way could refer to known.
+		NodeStore store = merged.nodeStore;
+		List<List<Way>> resolved = new ArrayList<List<Way>>(Collections.<List<Way>> nCopies(chunks.size(), null));
+		IntStream.range(0, chunks.size()).parallel().forEach(c -> {
+			List<PendingWay> pending = chunks.get(c).pendingWays;
+			List<Way> chunkWays = new ArrayList<Way>(pending.size());
+			for (PendingWay way : pending)
+				way.resolve(store, profile.isBounded(), chunkWays);
+			resolved.set(c, chunkWays);
+		});
+		for (List<Way> chunkWays : resolved) {
+			for (Way way : chunkWays)
+				merged.addWay(way);
+		}
+		return merged;
+	}
+
+	/**
+	 * Starts a node.
+	 * @param id The id of the node.
+	 * @param latitude The latitude of the node.
+	 * @param longitude The longitude of the node.
+	 */
+	public void startNode(long id, double latitude, double longitude)
+	{
+		if (!profile.contains(latitude, longitude)) {
+			currentNode = -1;
+			return;
+		}
+		currentNode = nodeStore.add(id, latitude, longitude);
+	}
+
+	/**
+	 * Ends the current node.
+	 */
+	public void endNode()
+	{
+		if (currentNode < 0)
+			return;
+		String name = nodeStore.getTag(currentNode, "name");
+		if (name != null)
+			nodeNames.put(name, currentNode);
+		currentNode = -1;
+	}
+
+	/**
+	 * Starts a way.
+	 * @param id The id of the way.
+	 */
+	public void startWay(String id)
+	{
+		currentWay = id;
+		wayLength = 0;
+		wayTags.clear();
+	}
+
+	/**
+	 * Adds a node to the end of the current way.
+	 * @param ref The id of the node.
+	 */
+	public void addWayNode(long ref)
+	{
+		if (deferReferences) {
+			if (currentWay == null)
+				return;
+			if (wayLength == wayRefs.length)
+				wayRefs = Arrays.copyOf(wayRefs, wayLength * 2);
+			wayRefs[wayLength++] = ref;
+			return;
+		}
+		int member = nodeStore.ordinalOf(ref);
+		if (currentWay == null || (member < 0 && !profile.isBounded()))
+			return;
+		if (wayLength == wayOrdinals.length)
+			wayOrdinals = Arrays.copyOf(wayOrdinals, wayLength * 2);
+		wayOrdinals[wayLength++] = member < 0 ? CUT : member;
+	}
+
+	/**
+	 * Ends the current way and adds it to the ways.
+	 */
+	public void endWay()
+	{
+		if (currentWay == null)
+			return;
+		String[] tags = wayTags.toArray(new String[wayTags.size()]);
+		if (!profile.keepsWay(tags))
+			currentWay = null;
+		else if (deferReferences)
+			pendingWays.add(new PendingWay(currentWay, Arrays.copyOf(wayRefs, wayLength), tags));
+		else {
+			for (int[] run : splitRuns(wayOrdinals, wayLength, profile.isBounded()))
+				addWay(createWay(currentWay, nodeStore, run, tags));
+		}
+		currentWay = null;
+	}
+
+	/**
+	 * Cuts the ordinals of a way at the nodes outside the box of the profile.
+	 * @param ordinals The ordinals of the nodes of the way, CUT for the nodes outside.
+	 * @param length The number of nodes of the way.
+	 * @param bounded Whether the profile has a box, in which case runs of fewer than two nodes are dropped.
+	 * @return The ordinals of each run of nodes inside the box, in order.
+	 */
+	private static List<int[]> splitRuns(int[] ordinals, int length, boolean bounded)
+	{
+		if (!bounded)
+			return Collections.singletonList(Arrays.copyOf(ordinals, length));
+		List<int[]> runs = new ArrayList<int[]>(1);
+		int start = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i < length && ordinals[i] != CUT)
+				continue;
+			if (i - start >= 2)
+				runs.add(Arrays.copyOfRange(ordinals, start, i));
+			start = i + 1;
+		}
+		return runs;
+	}
+
+	/**
+	 * Adds a way that is already built, with nodes from the store of this builder.
+	 * @param way The way to add after the other ways.
+	 */
+	public void addWay(Way way)
+	{
+		ways.add(way);
+		wayIds.put(way.getID(), way);
+		String name = way.getTag("name");
+		if (name != null)
+			wayNames.put(name, way);
+	}
+
+	private static Way createWay(String id, NodeStore store, int[] ordinals, String[] tags)
+	{
+		Way way = new Way(id, store, ordinals);
+		for (int i = 0; i < tags.length; i += 2)
+			way.addTag(tags[i], tags[i + 1]);
+		return way;
+	}
+
+	/**
+	 * Gives a name to a node already built, so that it can be found by name.
+	 * @param name The name of the node.
+	 * @param ordinal The ordinal of the node.
+	 */
+	public void addNodeName(String name, int ordinal)
+	{
+		nodeNames.put(name, ordinal);
+	}
+
+	/**
+	 * Adds a tag to the current node or way.
+	 * @param key The key of the tag.
+	 * @param value The value of the tag.
+	 */
+	public void addTag(String key, String value)
+	{
+		// A tag missing its key or value can never be looked up.
+		if (key == null || value == null || !profile.keepsTag(key))
+			return;
+		if (currentNode >= 0) {
+			nodeStore.addTag(currentNode, key, value);
+		} else if (currentWay != null) {
+			wayTags.add(key);
+			wayTags.add(value);
+		}
+	}
+
+	/**
+	 * Drops the nodes without tags that are not part of any way, if the profile asks for it, once every way is built.
+	 * The remaining nodes get new ordinals and the ways and names are updated to match.
+	 */
+	public void removeUnusedNodes()
+	{
+		if (!profile.dropsUnusedNodes())
+			return;
+		int size = nodeStore.size();
+		boolean[] keep = new boolean[size];
+		for (Way way : ways) {
+			for (int i = 0; i < way.size(); i++)
+				keep[way.getOrdinal(i)] = true;
+		}
+		int kept = 0;
+		for (int n = 0; n < size; n++) {
+			if (keep[n] || nodeStore.hasTags(n)) {
+				keep[n] = true;
+				kept++;
+			}
+		}
+		if (kept == size)
+			return;
+		int[] remap = nodeStore.retain(keep);
+		List<Way> built = new ArrayList<Way>(ways);
+		ways.clear();
+		wayIds.clear();
+		wayNames.clear();
+		for (Way way : built) {
+			int[] ordinals = new int[way.size()];
+			for (int i = 0; i < ordinals.length; i++)
+				ordinals[i] = remap[way.getOrdinal(i)];
+			Way moved = new Way(way.getID(), nodeStore, ordinals);
+			moved.setTagCodes(way.getTagCodes());
+			addWay(moved);
+		}
+		// Named nodes have a tag, so they are always kept.
+		for (Map.Entry<String, Integer> name : nodeNames.entrySet())
+			name.setValue(remap[name.getValue()]);
+	}
+
+	/**
+	 * Returns the store holding every node built.
+	 * @return The node store.
+	 */
+	public NodeStore getNodeStore()
+	{
+		return nodeStore;
+	}
+
+	/**
+	 * Returns every way built, in order.
+	 * @return The ways.
+	 */
+	public List<Way> getWays()
+	{
+		return ways;
+	}
+
+	/**
+	 * Returns the ordinals of the named nodes by name.
+	 * @return The map from node names to ordinals.
+	 */
+	public Map<String, Integer> getNodeNames()
+	{
+		return nodeNames;
+	}
+
+	/**
+	 * Returns the ways by id.
+	 * @return The map from way ids to ways.
+	 */
+	public Map<String, Way> getWayIds()
+	{
+		return wayIds;
+	}
+
+	/**
+	 * Returns the named ways by name.
+	 * @return The map from way names to ways.
+	 */
+	public Map<String, Way> getWayNames()
+	{
+		return wayNames;
+	}
+
+	/**
+	 * A way of a chunk whose nodes are still known by id.
+	 */
+	private static class PendingWay {
+		private final String id;
+		private final long[] refs;
+		private final String[] tags;
+
+		PendingWay(String id, long[] refs, String[] tags)
+		{
+			this.id = id;
+			this.refs = refs;
+			this.tags = tags;
+		}
+
+		/**
+		 * Creates the way, or with a bounded profile each run of it inside the box, from the nodes of the store.
+		 */
+		void resolve(NodeStore store, boolean bounded, List<Way> ways)
+		{
+			int[] ordinals = new int[refs.length];
+			int length = 0;
+			for (long ref : refs) {
+				int ordinal = store.ordinalOf(ref);
+				if (ordinal >= 0)
+					ordinals[length++] = ordinal;
+				else if (bounded)
+					ordinals[length++] = CUT;
+			}
+			for (int[] run : splitRuns(ordinals, length, bounded))
+				ways.add(createWay(id, store, run, tags));
+		}
+	}
+}
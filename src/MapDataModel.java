@@ -1,9 +1,8 @@
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,50 +28,252 @@ import org.xml.sax.helpers.DefaultHandler;
  *
  */
 public class MapDataModel {
-	private Map<String, OSMData> dataPoints;
+	// Nodes are kept column by column in the store, which also maps their ids.
+	private NodeStore nodeStore;
+	private Map<String, Integer> nodeNames;
+	private Map<String, Way> wayIds;
+	private Map<String, Way> wayNames;
+	// Ways in the order they were parsed, along with a read only view handed
+	// out to the display and the directions generator.
+	private List<Way> ways;
+	private List<Way> wayView;
 	private List<DataModelObserver> dataObservers;
 	private Node centerNode = null;
+	// Adjacency of the road network, rebuilt every time a file is parsed.
+	private RoadGraph roadGraph = null;
+	// Spatial index over the nodes, rebuilt every time a file is parsed.
+	private NodeIndex nodeIndex = null;
+	// Spatial index over the segments of every way, for snapping to roads.
+	private SegmentIndex segmentIndex = null;
+	// Optional routing preprocessing, off by default so that small maps load
+	// quickly.
+	private boolean buildHierarchy = false;
+	private ContractionHierarchy hierarchy = null;
+	// Number of landmarks to precompute distances from, 0 to skip them.
+	private int landmarkCount = 0;
+	private Landmarks landmarks = null;
+	private ParserMode parserMode = ParserMode.SAX;
+	// Whether parsed files are saved as binary snapshots that later loads of
+	// the same file read instead.
+	private boolean snapshotsEnabled = false;
 
 	public MapDataModel() {
-		dataPoints = new HashMap<String, OSMData>();
+		nodeStore = new NodeStore();
+		nodeNames = new HashMap<String, Integer>();
+		wayIds = new HashMap<String, Way>();
+		wayNames = new HashMap<String, Way>();
+		ways = new ArrayList<Way>();
+		wayView = Collections.unmodifiableList(ways);
 		dataObservers = new ArrayList<DataModelObserver>();
 	}
 
+	/**
+	 * The ways an OSM XML file can be read.
+	 */
+	public enum ParserMode {
+		/** The XML parser of the JDK, through SAX. */
+		SAX,
+		/** An OSMStreamParser reading bytes directly, several times faster. */
+		STREAMING,
+		/**
+		 * A ParallelOSMParser, which parses chunks of the file with streaming
+		 * parsers on every core.
+		 */
+		PARALLEL
+	}
+
 	/**
 	 * Parses through an OSMFile in order to extract the datapoints throughout
-	 * the file.
+	 * the file. Files compressed with gzip or bzip2 are recognised by their
+	 * first bytes and decompressed while they are parsed.
 	 * 
 	 * @param f
 	 *            The file to be parsed.
 	 */
 	public void parseFile(File f) throws IOException, ParserConfigurationException, SAXException {
-		dataPoints.clear();
-		centerNode = null;
-		SAXParserFactory spf = SAXParserFactory.newInstance();
-		spf.setValidating(false);
-		SAXParser saxParser = spf.newSAXParser();
-		XMLReader xmlReader = saxParser.getXMLReader();
-		OSMHandler handler = new OSMHandler();
-		xmlReader.setContentHandler(handler);
+		parseFile(f, LoadProfile.EVERYTHING);
+	}
+
+	/**
+	 * Parses the parts of an OSMFile a profile asks for. Whatever the profile
+	 * leaves out is skipped while parsing and never stored.
+	 * 
+	 * @param f
+	 *            The file to be parsed.
+	 * @param profile
+	 *            The parts of the file to load.
+	 */
+	public void parseFile(File f, LoadProfile profile)
+			throws IOException, ParserConfigurationException, SAXException {
+		if (loadSnapshot(f, profile))
+			return;
+		Compression compression = Compression.detect(f);
+		// A compressed file can't be cut into chunks, it is parsed in one go
+		// while another thread decompresses it.
+		if (parserMode == ParserMode.PARALLEL && compression == Compression.NONE) {
+			load(new ParallelOSMParser(f, profile).parse(), null);
+			saveSnapshot(f, profile);
+			return;
+		}
+		MapDataBuilder builder = new MapDataBuilder(new NodeStore(), false, profile);
 		InputStream stream = null;
 		try {
-			stream = new FileInputStream(f);
-			InputSource source = new InputSource(stream);
-			xmlReader.parse(source);
+			stream = compression.open(f);
+			if (parserMode != ParserMode.SAX) {
+				new OSMStreamParser(stream, builder).parse();
+			} else {
+				SAXParserFactory spf = SAXParserFactory.newInstance();
+				spf.setValidating(false);
+				SAXParser saxParser = spf.newSAXParser();
+				XMLReader xmlReader = saxParser.getXMLReader();
+				xmlReader.setContentHandler(new OSMHandler(builder));
+				InputSource source = new InputSource(stream);
+				xmlReader.parse(source);
+			}
 		} catch (IOException x) {
 			throw x;
 		} finally {
 			if (stream != null)
 				stream.close();
 		}
+		load(builder, null);
+		saveSnapshot(f, profile);
+	}
+
+	/**
+	 * Reads an OSM PBF file, the binary format most extracts are distributed
+	 * in, into the model.
+	 * 
+	 * @param f
+	 *            The PBF file to be read.
+	 */
+	public void parsePbfFile(File f) throws IOException {
+		parsePbfFile(f, LoadProfile.EVERYTHING);
+	}
+
+	/**
+	 * Reads the parts of an OSM PBF file a profile asks for into the model.
+	 * 
+	 * @param f
+	 *            The PBF file to be read.
+	 * @param profile
+	 *            The parts of the file to load.
+	 */
+	public void parsePbfFile(File f, LoadProfile profile) throws IOException {
+		if (loadSnapshot(f, profile))
+			return;
+		load(new PBFReader(f, profile).read(), null);
+		saveSnapshot(f, profile);
+	}
+
+	/**
+	 * Loads the snapshot of a file instead of parsing it, if snapshots are
+	 * enabled and the file hasn't changed since the snapshot was written with
+	 * the same profile.
+	 * 
+	 * @param f
+	 *            The OSM file.
+	 * @param profile
+	 *            The parts of the file to load.
+	 * @return true if the model was loaded from the snapshot.
+	 */
+	private boolean loadSnapshot(File f, LoadProfile profile) {
+		File snapshot = MapSnapshot.fileFor(f);
+		if (!snapshotsEnabled || !MapSnapshot.isCurrent(snapshot, f, profile))
+			return false;
+		try {
+			MapSnapshot map = MapSnapshot.read(snapshot);
+			load(map.getBuilder(), map.getRoadGraph());
+			return true;
+		} catch (IOException e) {
+			// A corrupt snapshot is parsed over and replaced.
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the model next to the file it was parsed from, if
+	 * snapshots are enabled.
+	 * 
+	 * @param f
+	 *            The OSM file.
+	 * @param profile
+	 *            The profile the file was loaded with.
+	 */
+	private void saveSnapshot(File f, LoadProfile profile) {
+		if (!snapshotsEnabled)
+			return;
+		try {
+			MapSnapshot.write(MapSnapshot.fileFor(f), f, profile, nodeStore, ways, nodeNames, roadGraph);
+		} catch (IOException e) {
+			// The snapshot only saves time on the next load, the file can
+			// still be parsed without it.
+		}
+	}
+
+	/**
+	 * Replaces the contents of the model with the data collected by a parser
+	 * and builds the routing structures over it.
+	 * 
+	 * @param builder
+	 *            The builder a whole file was parsed into.
+	 * @param graph
+	 *            The road graph of the data if it is already known, null to
+	 *            build it.
+	 */
+	private void load(MapDataBuilder builder, RoadGraph graph) {
+		builder.removeUnusedNodes();
+		nodeStore = builder.getNodeStore();
+		nodeStore.trimToSize();
+		nodeNames = builder.getNodeNames();
+		wayIds = builder.getWayIds();
+		wayNames = builder.getWayNames();
+		ways = builder.getWays();
+		wayView = Collections.unmodifiableList(ways);
+		centerNode = nodeStore.size() > 0 ? nodeStore.getNode(0) : null;
+		hierarchy = null;
+		landmarks = null;
+		roadGraph = graph != null ? graph : new RoadGraph(nodeStore, getWays());
+		nodeIndex = new NodeIndex(roadGraph);
+		segmentIndex = new SegmentIndex(roadGraph, getWays());
+		if (buildHierarchy)
+			hierarchy = new ContractionHierarchy(roadGraph);
+		if (landmarkCount > 0)
+			landmarks = new Landmarks(roadGraph, landmarkCount);
+	}
+
+	/**
+	 * Sets how OSM files are read by parseFile. Both modes build the same
+	 * model.
+	 * 
+	 * @param parserMode
+	 *            The parser to use.
+	 */
+	public void setParserMode(ParserMode parserMode) {
+		this.parserMode = parserMode;
+	}
+
+	/**
+	 * Sets whether parsed files are saved as snapshots next to them, which
+	 * later loads of an unchanged file read instead of parsing it again.
+	 * 
+	 * @param snapshotsEnabled
+	 *            true to read and write snapshots.
+	 */
+	public void setSnapshotsEnabled(boolean snapshotsEnabled) {
+		this.snapshotsEnabled = snapshotsEnabled;
 	}
 
 	class OSMHandler extends DefaultHandler {
-		OSMData currentData;
+		private final MapDataBuilder builder;
 
 		/** Attributes of the current element. */
 		private Attributes attributes;
 
+		OSMHandler(MapDataBuilder builder) {
+			this.builder = builder;
+		}
+
 		/**
 		 * Get the attributes of the most recently encountered XML element.
 		 */
@@ -89,21 +290,18 @@ public class MapDataModel {
 
 			if (atts.getLength() > 0)
 				if (qName.equals("node")) {
-					String id = "";
+					long id = 0;
 					double lat = 0, lon = 0;
 					for (int i = 0; i < attributes.getLength(); i++) {
 						if (attributes.getQName(i).equals("id")) {
-							id = attributes.getValue(i);
+							id = Long.parseLong(attributes.getValue(i));
 						} else if (attributes.getQName(i).equals("lat")) {
 							lat = Double.parseDouble(attributes.getValue(i));
 						} else if (attributes.getQName(i).equals("lon")) {
 							lon = Double.parseDouble(attributes.getValue(i));
 						}
 					}
-					Node newNode = new Node(id, lat, lon);
-					currentData = newNode;
-					if (centerNode == null)
-						centerNode = newNode;
+					builder.startNode(id, lat, lon);
 				} else if (qName.equals("way")) {
 					String id = "";
 					for (int i = 0; i < attributes.getLength(); i++) {
@@ -111,7 +309,7 @@ public class MapDataModel {
 							id = attributes.getValue(i);
 						}
 					}
-					currentData = new Way(id);
+					builder.startWay(id);
 				} else if (qName.equals("nd")) {
 					String ref = null;
 					for (int i = 0; i < attributes.getLength(); i++) {
@@ -119,50 +317,146 @@ public class MapDataModel {
 							ref = attributes.getValue(i);
 						}
 					}
-					Node member = (Node) dataPoints.get(ref);
-					if (member != null && currentData != null) {
-						Way way = (Way) currentData;
-						way.addNode(member);
-						currentData = way;
-					}
+					if (ref != null)
+						builder.addWayNode(Long.parseLong(ref));
 				} else if (qName.equals("tag")) {
-					if (currentData != null) {
-						String key = null;
-						String value = null;
-						for (int i = 0; i < attributes.getLength(); i++) {
-							if (attributes.getQName(i).equals("k")) {
-								key = attributes.getValue(i);
-							} else if (attributes.getQName(i).equals("v")) {
-								value = attributes.getValue(i);
-							}
+					String key = null;
+					String value = null;
+					for (int i = 0; i < attributes.getLength(); i++) {
+						if (attributes.getQName(i).equals("k")) {
+							key = attributes.getValue(i);
+						} else if (attributes.getQName(i).equals("v")) {
+							value = attributes.getValue(i);
 						}
-						currentData.addTag(key, value);
 					}
+					builder.addTag(key, value);
 				}
 		}
 
 		public void endElement(String namespaceURI, String localName, String qName) throws SAXParseException {
-			if (qName.equals("node") || qName.equals("way")) {
-				dataPoints.put(currentData.getID(), currentData);
-				String name = currentData.getTag("name");
-				if (name != null)
-					dataPoints.put(name, currentData);
-				currentData = null;
-			}
+			if (qName.equals("node"))
+				builder.endNode();
+			else if (qName.equals("way"))
+				builder.endWay();
+		}
+	}
+
+	/**
+	 * Finds a node by its id or its name.
+	 * 
+	 * @param key
+	 *            The OSM id or the name of the node.
+	 * @return The node, or null if no node has that id or name.
+	 */
+	public Node getNode(String key) {
+		int ordinal = -1;
+		try {
+			ordinal = nodeStore.ordinalOf(Long.parseLong(key));
+		} catch (NumberFormatException e) {
+			// Not an id, so it can only be a name.
+		}
+		if (ordinal < 0) {
+			Integer named = nodeNames.get(key);
+			ordinal = named == null ? -1 : named;
 		}
+		return ordinal < 0 ? null : nodeStore.getNode(ordinal);
 	}
 
 	/**
-	 * Gets a data point from the dataPoints currently stored in the model given
-	 * a String key.
+	 * Finds a way by its id or its name.
+	 * 
+	 * @param key
+	 *            The OSM id or the name of the way.
+	 * @return The way, or null if no way has that id or name.
+	 */
+	public Way getWay(String key) {
+		Way way = wayIds.get(key);
+		return way != null ? way : wayNames.get(key);
+	}
+
+	/**
+	 * Gets a data point currently stored in the model given a String key,
+	 * which is the id or the name of a node or else of a way.
 	 * 
 	 * @param key
 	 *            The key of the data point to be obtained.
-	 * @return The OSMDataPoint which is
+	 * @return The node or way with that key, or null if there is none.
 	 */
 	public OSMData getDataPoint(String key) {
-		return dataPoints.get(key);
+		Node node = getNode(key);
+		return node != null ? node : getWay(key);
+	}
+
+	/**
+	 * Returns the road graph built from the ways of the most recently parsed
+	 * file, used by the DirectionsGenerator for routing.
+	 * 
+	 * @return The road graph or null if no file has been parsed.
+	 */
+	public RoadGraph getRoadGraph() {
+		return roadGraph;
+	}
+
+	/**
+	 * Returns the spatial index over the nodes of the most recently parsed
+	 * file, used to find the node closest to a location.
+	 * 
+	 * @return The node index or null if no file has been parsed.
+	 */
+	public NodeIndex getNodeIndex() {
+		return nodeIndex;
+	}
+
+	/**
+	 * Returns the spatial index over the way segments of the most recently
+	 * parsed file, used to find the road closest to a location.
+	 * 
+	 * @return The segment index or null if no file has been parsed.
+	 */
+	public SegmentIndex getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	/**
+	 * Sets whether parsing a file should also build a contraction hierarchy
+	 * over the road graph. This makes loading slower but directions much
+	 * faster, which pays off on large maps.
+	 * 
+	 * @param buildHierarchy
+	 *            true to contract the road graph after parsing.
+	 */
+	public void setContractionHierarchyEnabled(boolean buildHierarchy) {
+		this.buildHierarchy = buildHierarchy;
+	}
 
+	/**
+	 * Returns the contraction hierarchy of the most recently parsed file.
+	 * 
+	 * @return The contraction hierarchy or null if it wasn't built.
+	 */
+	public ContractionHierarchy getContractionHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * Sets how many landmarks parsing a file should pick for landmark (ALT)
+	 * routing. Each landmark costs one search over the road graph at load time
+	 * and one distance per node of memory.
+	 * 
+	 * @param landmarkCount
+	 *            The number of landmarks, 0 to not compute any.
+	 */
+	public void setLandmarkCount(int landmarkCount) {
+		this.landmarkCount = landmarkCount;
+	}
+
+	/**
+	 * Returns the landmark distances of the most recently parsed file.
+	 * 
+	 * @return The landmarks or null if none were computed.
+	 */
+	public Landmarks getLandmarks() {
+		return landmarks;
 	}
 
 	/**
@@ -186,49 +480,43 @@ public class MapDataModel {
 	}
 
 	/**
-	 * Returns a list of all nodes that are parsed by the parser, mainly serves
-	 * as convenience in order to avoid parsing the entire dataPoints collection
+	 * Returns a list of all nodes that are parsed by the parser, in the order
+	 * they appear in the file. The list is a view of the node store, so the
+	 * nodes it returns are created as they are read.
 	 * 
-	 * @return A list of all nodes in the osm file
+	 * @return A read only list of all nodes in the osm file
 	 */
 	public List<Node> getNodes() {
-		ArrayList<Node> nodes = new ArrayList<Node>();
-		Collection<OSMData> values = dataPoints.values();
-		for (OSMData data : values) {
-			if (data instanceof Node) {
-				Node node = (Node) data;
-				nodes.add(node);
-			}
-		}
-		return nodes;
+		return nodeStore.getNodes();
 	}
 
 	/**
-	 * Returns a list of all ways that are parsed by the parser, mainly serves
-	 * as convenience in order to avoid parsing the entire dataPoints collection
+	 * Returns the store holding the nodes of the most recently parsed file.
 	 * 
-	 * @return A list of all nodes in the osm file
+	 * @return The node store.
+	 */
+	public NodeStore getNodeStore() {
+		return nodeStore;
+	}
+
+	/**
+	 * Returns a list of all ways that are parsed by the parser, in the order
+	 * they appear in the file. The list is built while parsing.
+	 * 
+	 * @return A read only list of all ways in the osm file
 	 */
 	public List<Way> getWays() {
-		ArrayList<Way> ways = new ArrayList<Way>();
-		Collection<OSMData> values = dataPoints.values();
-		for (OSMData data : values) {
-			if (data instanceof Way) {
-				Way way = (Way) data;
-				ways.add(way);
-			}
-		}
-		return ways;
+		return wayView;
 	}
 
 	/**
-	 * Gets the node that the MapDisplay will center the map around. By default
-	 * this is simply the first Node processed. Unneeded in part 4.
+	 * Gets the node that the MapDisplay will center the map around, which is
+	 * the first Node parsed.
+	 * 
+	 * @return The center node or null if no file has been parsed.
 	 */
 	public Node getCenterNode() {
-		List<Node> nodes = getNodes();
-		// Essentially returns a random node.
-		return nodes.get(0);
+		return centerNode;
 	}
 
 }
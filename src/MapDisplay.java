@@ -6,9 +6,11 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,23 +57,55 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 	private int panX = 0, panY = 0;
 	// Map points to nodes to allow obtaining nodes from points;
 	private BiMap<Node, Point> map;
+	// Bounding boxes of the ways in map points, so that painting only goes
+	// through the ways on screen. Rebuilt along with the points.
+	private BoxGrid wayGrid = null;
+	// Outline of every way in map points for each level, by level - 1 and
+	// index in the model's ways, built along with the points so that painting
+	// draws each way in one call. The outlines of a level leave out the
+	// points that make no visible difference at its closest zoom.
+	private Path2D.Float[][] wayPaths = null;
+	// Points of the way createPath is working on, reused from way to way.
+	private float[] pathXs = new float[16], pathYs = new float[16];
+	// Ordinal of the WayStyle of every way, by index in the model's ways.
+	private byte[] wayStyles = null;
+	// Whether every node, by index in the model's nodes, has a name.
+	private boolean[] namedNodes = null;
+	// Ways of a tile sorted by style, and the first of each style in it.
+	private int[] styledWays = new int[256];
+	private final int[] styleStarts = new int[WayStyle.values().length + 1];
+	// Point of every node, by index in the model's nodes, and a grid over
+	// their circles so that a tile finds the nodes it shows.
+	private Point[] nodePoints = null;
+	private BoxGrid nodeGrid = null;
+	// Rendered tiles of the ways and nodes, the overlays are drawn on top of
+	// them on every paint so that they never cause a tile to be rendered.
+	private final TileCache tiles = new TileCache(TILE_CACHE_BYTES);
 	// Directions way that is displayed when directions are requested.
 	private Way directionsWay = null;
+	private Path2D.Float directionsPath = null;
+	// Point of the user's location the directions start from when it isn't a
+	// node of the model, null otherwise.
+	private Point directionsStart = null;
 	// Initial default panel size for the Map display
 	private final int INITIAL_PANEL_SIZE = 600;
 	// Location of the mouse on the JPanel, initialized to a sentinel point.
 	private Point currentMouse = new Point();
-	// Strokes and colors to differentiate between different types of ways.
+	// Strokes of the overlays and node circles, the ways of the model are
+	// drawn in their WayStyle.
 	private final BasicStroke thinStroke = new BasicStroke(1);
 	private final BasicStroke medStroke = new BasicStroke(3);
-	private final BasicStroke thickStroke = new BasicStroke(5);
 	private final BasicStroke thickestStroke = new BasicStroke(7);
-	private final Color HIGH_LEVEL_BOUNDARY = Color.RED;
-	private final Color MEDIUM_LEVEL_BOUNDARY = Color.GREEN;
-	private final Color LOW_LEVEL_BOUNDARY = Color.YELLOW;
-	private final Color WATERWAY = Color.cyan;
 	private final Color DIRECTIONS = Color.MAGENTA;
 	private final int BOUNDS_WIDTH = 5;
+	// Radius of the circles drawn for nodes.
+	private static final int NODE_RADIUS = 5;
+	// Closest zoom of each level.
+	private static final double[] LEVEL_MAXIMUM_ZOOMS = { 0.5, 2.0, 5.0 };
+	// How far in pixels a simplified outline may stray from the way.
+	private static final double SIMPLIFY_TOLERANCE = 0.5;
+	// Memory the rendered tiles may take, 256 tiles.
+	private static final long TILE_CACHE_BYTES = 64L << 20;
 	// To determine if we are still using the GPS system in order to drive.
 	private boolean isDriving;
 
@@ -103,6 +137,10 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 		double latitudeOffset = center.getLatitude();
 		double longitudeOffset = center.getLongitude();
 		List<Node> nodes = model.getNodes();
+		nodePoints = new Point[nodes.size()];
+		namedNodes = new boolean[nodes.size()];
+		int[] nodeBounds = new int[nodes.size() * 4];
+		int n = 0;
 		for (Node node : nodes) {
 			double adjustedLat = node.getLatitude() - latitudeOffset;
 			double adjustedLon = node.getLongitude() - longitudeOffset;
@@ -118,7 +156,118 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 			adjustedLon += (INITIAL_PANEL_SIZE / 2);
 			Point point = new Point((int) adjustedLon, (int) adjustedLat);
 			map.put(node, point);
+			nodePoints[n] = point;
+			namedNodes[n] = node.getTag("name") != null;
+			nodeBounds[n * 4] = point.x - NODE_RADIUS;
+			nodeBounds[n * 4 + 1] = point.y - NODE_RADIUS;
+			nodeBounds[n * 4 + 2] = point.x + NODE_RADIUS;
+			nodeBounds[n * 4 + 3] = point.y + NODE_RADIUS;
+			n++;
 		}
+		nodeGrid = new BoxGrid(nodeBounds, nodes.size());
+		List<Way> ways = model.getWays();
+		wayPaths = new Path2D.Float[LEVEL_MAXIMUM_ZOOMS.length][ways.size()];
+		wayStyles = new byte[ways.size()];
+		int[] bounds = new int[ways.size() * 4];
+		for (int w = 0; w < ways.size(); w++) {
+			wayStyles[w] = (byte) WayStyle.classify(ways.get(w)).ordinal();
+			int count = collectPoints(ways.get(w));
+			Path2D.Float path = pathThrough(count);
+			for (int l = 0; l < LEVEL_MAXIMUM_ZOOMS.length; l++) {
+				int[] kept = LineSimplifier.simplify(pathXs, pathYs, count,
+						SIMPLIFY_TOLERANCE / LEVEL_MAXIMUM_ZOOMS[l]);
+				wayPaths[l][w] = kept.length == count ? path : pathThrough(kept);
+			}
+			if (path.getCurrentPoint() == null) {
+				// No points, an empty box.
+				bounds[w * 4] = bounds[w * 4 + 1] = 0;
+				bounds[w * 4 + 2] = bounds[w * 4 + 3] = -1;
+				continue;
+			}
+			Rectangle2D box = path.getBounds2D();
+			bounds[w * 4] = (int) box.getMinX();
+			bounds[w * 4 + 1] = (int) box.getMinY();
+			bounds[w * 4 + 2] = (int) box.getMaxX();
+			bounds[w * 4 + 3] = (int) box.getMaxY();
+		}
+		wayGrid = new BoxGrid(bounds, ways.size());
+		tiles.clear();
+	}
+
+	/**
+	 * Builds the outline of a way through the points of its nodes.
+	 * 
+	 * @param way
+	 *            The way.
+	 * @return A path from the first node of the way to the last, without
+	 *         the nodes that have no point.
+	 */
+	private Path2D.Float createPath(Way way) {
+		return pathThrough(collectPoints(way));
+	}
+
+	/**
+	 * Builds the outline through the first points left by collectPoints.
+	 * 
+	 * @param count
+	 *            The number of points.
+	 * @return A path through those points.
+	 */
+	private Path2D.Float pathThrough(int count) {
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(count, 2));
+		for (int i = 0; i < count; i++) {
+			if (i == 0)
+				path.moveTo(pathXs[i], pathYs[i]);
+			else
+				path.lineTo(pathXs[i], pathYs[i]);
+		}
+		return path;
+	}
+
+	/**
+	 * Builds the outline through some of the points left by collectPoints.
+	 * 
+	 * @param kept
+	 *            The indices of the points, in order.
+	 * @return A path through those points.
+	 */
+	private Path2D.Float pathThrough(int[] kept) {
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(kept.length, 2));
+		for (int i = 0; i < kept.length; i++) {
+			if (i == 0)
+				path.moveTo(pathXs[kept[i]], pathYs[kept[i]]);
+			else
+				path.lineTo(pathXs[kept[i]], pathYs[kept[i]]);
+		}
+		return path;
+	}
+
+	/**
+	 * Puts the points of the nodes of a way into pathXs and pathYs, leaving
+	 * out the nodes that have no point and points repeating the one before.
+	 * 
+	 * @param way
+	 *            The way.
+	 * @return The number of points.
+	 */
+	private int collectPoints(Way way) {
+		List<Node> nodes = way.getNodes();
+		if (pathXs.length < nodes.size()) {
+			pathXs = new float[nodes.size()];
+			pathYs = new float[nodes.size()];
+		}
+		int count = 0;
+		for (Node node : nodes) {
+			Point point = (Point) map.getForward(node);
+			if (point == null)
+				continue;
+			if (count > 0 && pathXs[count - 1] == point.x && pathYs[count - 1] == point.y)
+				continue;
+			pathXs[count] = point.x;
+			pathYs[count] = point.y;
+			count++;
+		}
+		return count;
 	}
 
 	/**
@@ -159,11 +308,11 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 		panY *= ratio;
 		zoom = newZoom;
 		// Farthest out zoom
-		if (zoom < 0.5) {
+		if (zoom < LEVEL_MAXIMUM_ZOOMS[0]) {
 			level = 1;
 		}
 		// Moderate Zoom
-		else if (zoom < 2.0) {
+		else if (zoom < LEVEL_MAXIMUM_ZOOMS[1]) {
 			level = 2;
 		}
 		// Closest zoom.
@@ -210,36 +359,60 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 		panX = 0;
 		panY = 0;
 		map.clear();
+		wayGrid = null;
+		wayPaths = null;
+		nodePoints = null;
+		namedNodes = null;
+		nodeGrid = null;
+		wayStyles = null;
+		tiles.clear();
 		currentMouse = new Point();
 		directionsWay = null;
+		directionsPath = null;
+		directionsStart = null;
 		isDriving = false;
 		initialize();
 	}
 
 	/**
 	 * Fills the Visible points list with points that will actually be displayed
-	 * in the JPanel
+	 * in the JPanel. Only the nodes the grid finds in the panel are looked at,
+	 * so this takes as long as what is on screen rather than the whole map.
 	 */
 	public void findVisiblePoints() {
 		visiblePoints.clear();
-		Collection<Point> points = map.valueSet();
-		List<Point> allPoints = new ArrayList<Point>();
-		allPoints.addAll(points);
-		if (currentLocation != null)
-			allPoints.add(currentLocation);
-		for (Point point : allPoints) {
-			Point adjustedPoint = new Point((int) (point.x * zoom + (panX + getWidth() / 2)),
-					(int) (point.y * zoom + (panY + getHeight() / 2)));
-			if (contains(adjustedPoint)) {
-				visiblePoints.add(point);
-
+		if (nodeGrid != null) {
+			double left = (-panX - getWidth() / 2) / zoom;
+			double top = (-panY - getHeight() / 2) / zoom;
+			double right = (getWidth() - panX - getWidth() / 2) / zoom;
+			double bottom = (getHeight() - panY - getHeight() / 2) / zoom;
+			int count = nodeGrid.query(left, top, right, bottom);
+			int[] found = nodeGrid.getResults();
+			for (int i = 0; i < count; i++) {
+				if (isOnScreen(nodePoints[found[i]])) {
+					visiblePoints.add(nodePoints[found[i]]);
+				}
 			}
 		}
-		if (!visiblePoints.contains(currentLocation) && currentLocation != null && isDriving) {
+		// The user's location the directions start from isn't in the grid.
+		if (directionsStart != null && isOnScreen(directionsStart)) {
+			visiblePoints.add(directionsStart);
+		}
+		if (currentLocation != null && isDriving && !isOnScreen(currentLocation)) {
 			pan(currentLocation);
 		}
-		visiblePoints.remove(currentLocation);
+	}
 
+	/**
+	 * Determines whether a point lands inside the panel at the current pan and
+	 * zoom.
+	 * 
+	 * @param point
+	 *            The point in map coordinates.
+	 * @return true if the point is displayed.
+	 */
+	private boolean isOnScreen(Point point) {
+		return contains((int) (point.x * zoom + (panX + getWidth() / 2)), (int) (point.y * zoom + (panY + getHeight() / 2)));
 	}
 
 	/**
@@ -256,23 +429,20 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 	}
 
 	/**
-	 * Paints the MapDisplay
+	 * Paints the MapDisplay. The ways and nodes are drawn from tiles, which are
+	 * only rendered the first time they are shown at a zoom, and the
+	 * directions and current location are drawn over them.
 	 */
 	@Override
 	public void paintComponent(Graphics g) {
 		findVisiblePoints();
-		List<Way> ways = model.getWays();
 		Graphics2D graphics = (Graphics2D) g;
+		paintTiles(graphics);
 		graphics.translate(panX, panY);
 		graphics.translate(getWidth() / 2, getHeight() / 2);
 		graphics.scale(zoom, zoom);
-		for (Point point : visiblePoints) {
-			if (level == 3) {
-				if (((Node) (map.getBackward(point))).getTag("name") != null) {
-					graphics.setColor(Color.RED);
-				} else
-					graphics.setColor(Color.BLACK);
-				Ellipse2D.Double ellipse = new Ellipse2D.Double(point.getX() - 5, point.getY() - 5, 10, 10);
+		if (level == 3) {
+			for (Point point : visiblePoints) {
 				int coorX = (int) (point.x * zoom + (panX + getWidth() / 2));
 				int coorY = (int) (point.y * zoom + (panY + getHeight() / 2));
 				int cornerOffset = (int) (BOUNDS_WIDTH * zoom) / 2;
@@ -284,92 +454,163 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 				} else {
 					setToolTipText(null);
 				}
-				graphics.draw(ellipse);
 			}
 		}
-		// Display standard ways
-		for (Way way : ways) {
-			String roadType = way.getTag("highway");
-			String boundaryLevel = way.getTag("admin_level");
-			String water = way.getTag("waterway");
-			if (boundaryLevel != null) {
-				Integer adminlevel = Integer.parseInt(boundaryLevel);
-				graphics.setStroke(thickestStroke);
-				if (adminlevel <= 3) {
-					graphics.setColor(HIGH_LEVEL_BOUNDARY);
-					displayWay(way, graphics);
-				} else if (adminlevel <= 6) {
-					graphics.setColor(MEDIUM_LEVEL_BOUNDARY);
-					displayWay(way, graphics);
-				} else {
-					graphics.setColor(LOW_LEVEL_BOUNDARY);
-					displayWay(way, graphics);
-				}
-			} else if (water != null) {
-				graphics.setStroke(medStroke);
-				graphics.setColor(WATERWAY);
-				displayWay(way, graphics);
-			} else {
+		if (directionsWay != null) {
+			graphics.setStroke(medStroke);
+			graphics.setColor(DIRECTIONS);
+			graphics.draw(directionsPath);
+			// The user's location isn't in the tiles.
+			if (level == 3 && directionsStart != null) {
+				graphics.setStroke(thinStroke);
 				graphics.setColor(Color.BLACK);
-				// Assume non tagged ways are residential.
-				if (level == 1) {
-					if (roadType == null) {
-
-					} else if (roadType.equals("motorway") || roadType.equals("trunk") || roadType.equals("primary")) {
-						graphics.setStroke(medStroke);
-						displayWay(way, graphics);
-					} else if (roadType.equals("secondary") || roadType.equals("tertiary")) {
-						graphics.setStroke(thinStroke);
-						displayWay(way, graphics);
-					}
-				} else if (level == 2) {
-					if (roadType == null) {
-						graphics.setStroke(thinStroke);
-						displayWay(way, graphics);
-					} else if (roadType.equals("motorway") || roadType.equals("trunk") || roadType.equals("primary")) {
-						graphics.setStroke(thickStroke);
-						displayWay(way, graphics);
-					} else if (roadType.equals("secondary") || roadType.equals("tertiary")) {
-						graphics.setStroke(medStroke);
-						displayWay(way, graphics);
-					} else {
-						graphics.setStroke(thinStroke);
-						displayWay(way, graphics);
-					}
-				} else if (level == 3) {
-					if (roadType == null) {
-						graphics.setStroke(medStroke);
-						displayWay(way, graphics);
-					} else if (roadType.equals("motorway") || roadType.equals("trunk") || roadType.equals("primary")) {
-						graphics.setStroke(thickestStroke);
-						displayWay(way, graphics);
-					} else if (roadType.equals("secondary") || roadType.equals("tertiary")) {
-						graphics.setStroke(thickStroke);
-						displayWay(way, graphics);
-					} else {
-						graphics.setStroke(medStroke);
-						displayWay(way, graphics);
-					}
+				graphics.draw(nodeCircle(directionsStart));
+			}
+		}
+		// Display current location if there is one
+		if (currentLocation != null) {
+			graphics.setColor(Color.PINK);
+			Ellipse2D.Double ellipse = new Ellipse2D.Double(currentLocation.getX() - 5, currentLocation.getY() - 5, 10,
+					10);
+			graphics.draw(ellipse);
+		}
+
+	}
+
+	/**
+	 * Draws the tiles covering the panel at the current pan and zoom,
+	 * rendering those that aren't cached.
+	 * 
+	 * @param graphics
+	 *            The graphics context of the MapDisplay, not yet translated.
+	 */
+	private void paintTiles(Graphics2D graphics) {
+		int size = TileCache.TILE_SIZE;
+		// Where the origin of the map points lands on the panel.
+		int originX = panX + getWidth() / 2;
+		int originY = panY + getHeight() / 2;
+		Rectangle area = graphics.getClipBounds();
+		if (area == null) {
+			area = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		int firstColumn = Math.floorDiv(area.x - originX, size);
+		int lastColumn = Math.floorDiv(area.x + area.width - 1 - originX, size);
+		int firstRow = Math.floorDiv(area.y - originY, size);
+		int lastRow = Math.floorDiv(area.y + area.height - 1 - originY, size);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				BufferedImage tile = tiles.get(zoom, column, row);
+				if (tile == null) {
+					tile = renderTile(column, row);
+					tiles.put(zoom, column, row, tile);
 				}
+				graphics.drawImage(tile, originX + column * size, originY + row * size, null);
+			}
+		}
+	}
+
+	/**
+	 * Renders the ways and, at the closest zoom, the nodes of one tile at the
+	 * current zoom.
+	 * 
+	 * @param column
+	 *            The column of the tile.
+	 * @param row
+	 *            The row of the tile.
+	 * @return The image of the tile, transparent where nothing is drawn.
+	 */
+	private BufferedImage renderTile(int column, int row) {
+		int size = TileCache.TILE_SIZE;
+		BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+		if (wayGrid == null || wayGrid.size() != model.getWays().size()) {
+			return tile;
+		}
+		Graphics2D graphics = tile.createGraphics();
+		graphics.translate(-column * size, -row * size);
+		graphics.scale(zoom, zoom);
+		// The tile in map points, padded by half of the widest stroke so that
+		// ways just outside still draw their edge.
+		double padding = thickestStroke.getLineWidth() / 2 + 1;
+		double left = column * size / zoom - padding;
+		double top = row * size / zoom - padding;
+		double right = (column + 1) * size / zoom + padding;
+		double bottom = (row + 1) * size / zoom + padding;
+		if (level == 3) {
+			graphics.setStroke(thinStroke);
+			int count = nodeGrid.query(left, top, right, bottom);
+			int[] found = nodeGrid.getResults();
+			for (int i = 0; i < count; i++) {
+				if (namedNodes[found[i]]) {
+					graphics.setColor(Color.RED);
+				} else
+					graphics.setColor(Color.BLACK);
+				graphics.draw(nodeCircle(nodePoints[found[i]]));
 			}
-			if (directionsWay != null) {
-				graphics.setStroke(medStroke);
-				graphics.setColor(DIRECTIONS);
-				displayWay(directionsWay, graphics);
+		}
+		paintWays(graphics, wayGrid.query(left, top, right, bottom), wayGrid.getResults());
+		graphics.dispose();
+		return tile;
+	}
+
+	/**
+	 * Draws ways one style after another, so that the stroke and color are
+	 * only set once for every style.
+	 * 
+	 * @param graphics
+	 *            The graphics context to draw on, in map points.
+	 * @param count
+	 *            The number of ways.
+	 * @param found
+	 *            The indices of the ways in the model's ways, in order.
+	 */
+	private void paintWays(Graphics2D graphics, int count, int[] found) {
+		// Count the ways of every style, turn the counts into starts, then
+		// sort the ways in, keeping their order within a style.
+		Arrays.fill(styleStarts, 0);
+		for (int i = 0; i < count; i++) {
+			styleStarts[wayStyles[found[i]] + 1]++;
+		}
+		for (int style = 1; style < styleStarts.length; style++) {
+			styleStarts[style] += styleStarts[style - 1];
+		}
+		if (styledWays.length < count) {
+			styledWays = new int[count];
+		}
+		int[] next = styleStarts.clone();
+		for (int i = 0; i < count; i++) {
+			styledWays[next[wayStyles[found[i]]]++] = found[i];
+		}
+		Path2D.Float[] paths = wayPaths[level - 1];
+		for (int code = 0; code + 1 < styleStarts.length; code++) {
+			WayStyle style = WayStyle.fromCode(code);
+			BasicStroke stroke = style.getStroke(level);
+			if (stroke == null || styleStarts[code] == styleStarts[code + 1]) {
+				continue;
 			}
-			// Display current location if there is one
-			if (currentLocation != null) {
-				graphics.setColor(Color.PINK);
-				Ellipse2D.Double ellipse = new Ellipse2D.Double(currentLocation.getX() - 5, currentLocation.getY() - 5,
-						10, 10);
-				graphics.draw(ellipse);
+			graphics.setStroke(stroke);
+			graphics.setColor(style.getColor());
+			for (int i = styleStarts[code]; i < styleStarts[code + 1]; i++) {
+				graphics.draw(paths[styledWays[i]]);
 			}
 		}
+	}
 
+	/**
+	 * Returns the circle drawn for a node.
+	 * 
+	 * @param point
+	 *            The point of the node.
+	 * @return The circle around the point.
+	 */
+	private Ellipse2D.Double nodeCircle(Point point) {
+		return new Ellipse2D.Double(point.getX() - NODE_RADIUS, point.getY() - NODE_RADIUS, NODE_RADIUS * 2,
+				NODE_RADIUS * 2);
 	}
 
 	/**
-	 * Helper method used to display ways(lines)
+	 * Helper method used to display ways(lines). The ways of the model are
+	 * painted from the paths built by assignPointCoordinates instead, this
+	 * builds the path of the way on every call.
 	 * 
 	 * @param g
 	 *            The graphics context of the MapDisplay
@@ -377,17 +618,7 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 	 *            The way to be displayed
 	 */
 	public void displayWay(Way way, Graphics2D graphics) {
-		List<Node> nodes = way.getNodes();
-		List<Point> points = new ArrayList<Point>();
-		for (int i = 0; i < nodes.size() - 1; i++) {
-			Node node = nodes.get(i);
-			Point point = (Point) map.getForward(node);
-			points.add(point);
-		}
-		for (int i = 0; i < points.size() - 1; i++) {
-			Line2D.Double line = new Line2D.Double(points.get(i), points.get(i + 1));
-			graphics.draw(line);
-		}
+		graphics.draw(createPath(way));
 	}
 
 	/**
@@ -399,8 +630,10 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 
 	public void setDirectionsPath(Way MapPath) {
 		directionsWay = MapPath;
+		directionsStart = null;
 		if (MapPath == null)
 		{
+			directionsPath = null;
 			return;
 		}
 		List<Node> nodes = MapPath.getNodes();
@@ -425,8 +658,10 @@ public class MapDisplay extends JPanel implements DataModelObserver, GPSListener
 			adjustedLon += (INITIAL_PANEL_SIZE / 2);
 			Point point = new Point((int) adjustedLon, (int) adjustedLat);
 			map.put(key, point);
+			directionsStart = point;
 
 		}
+		directionsPath = createPath(MapPath);
 	}
 
 	/**
@@ -0,0 +1,296 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary copy of a parsed map, written next to the OSM file it came from so that the next load can skip parsing. The
+ * snapshot holds the tag dictionary, the node columns of the NodeStore, the node ordinals and tag codes of every way
+ * and optionally the edges of the RoadGraph, each as a count followed by a flat array. Loading maps the file with
+ * FileChannel.map and copies every array out in bulk, only the strings of the dictionary and the way ids are decoded
+ * one by one.
+ *
+ * The header records the size and modification time of the OSM file and the hash of the LoadProfile it was loaded
+ * with, and a snapshot is only used while they all still match. Snapshots are written to a temporary file that is
+ * moved into place, so a half written one is never read.
+ * @author Jonathan Yin
+ *
+ */
+public class MapSnapshot {
+
+	private static final long MAGIC = 0x475053534E415031L; // "GPSSNAP1"
+	private static final int VERSION = 3;
+	private static final int HAS_GRAPH = 1;
+	private static final String EXTENSION = ".snapshot";
+
+	private final MapDataBuilder builder;
+	private final RoadGraph roadGraph;
+
+	private MapSnapshot(MapDataBuilder builder, RoadGraph roadGraph)
+	{
+		this.builder = builder;
+		this.roadGraph = roadGraph;
+	}
+
+	/**
+	 * Returns the nodes, ways and names of the map.
+	 * @return A builder holding the map.
+	 */
+	public MapDataBuilder getBuilder()
+	{
+		return builder;
+	}
+
+	/**
+	 * Returns the road graph of the map.
+	 * @return The road graph, or null if the snapshot was written without one.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return roadGraph;
+	}
+
+	/**
+	 * Returns where the snapshot of an OSM file is kept.
+	 * @param source The OSM file.
+	 * @return The snapshot file next to it.
+	 */
+	public static File fileFor(File source)
+	{
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Determines whether a snapshot exists and was written from the current contents of an OSM file, loaded with the
+	 * same profile.
+	 * @param snapshot The snapshot file.
+	 * @param source The OSM file.
+	 * @param profile The profile the file is to be loaded with.
+	 * @return true if the snapshot can be read instead of the source.
+	 */
+	public static boolean isCurrent(File snapshot, File source, LoadProfile profile)
+	{
+		if (!snapshot.isFile())
+			return false;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(snapshot))) {
+			return in.readLong() == MAGIC && in.readInt() == VERSION && in.readLong() == source.length()
+					&& in.readLong() == source.lastModified() && in.readInt() == profile.hashCode();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a parsed map.
+	 * @param snapshot The snapshot file, replaced if it exists.
+	 * @param source The OSM file the map was parsed from.
+	 * @param profile The profile the file was loaded with.
+	 * @param store The nodes of the map.
+	 * @param ways The ways of the map, whose nodes are in the store.
+	 * @param nodeNames The ordinals of the named nodes by name.
+	 * @param roadGraph The road graph of the map, or null to leave it out.
+	 * @throws IOException If the snapshot can't be written.
+	 */
+	public static void write(File snapshot, File source, LoadProfile profile, NodeStore store, List<Way> ways,
+			Map<String, Integer> nodeNames, RoadGraph roadGraph) throws IOException
+	{
+		File temporary = new File(snapshot.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(source.length());
+			out.writeLong(source.lastModified());
+			out.writeInt(profile.hashCode());
+			out.writeInt(roadGraph != null ? HAS_GRAPH : 0);
+			TagDictionary dictionary = store.getTagDictionary();
+			int dictionarySize = dictionary.size();
+			out.writeInt(dictionarySize);
+			for (int code = 0; code < dictionarySize; code++)
+				writeString(out, dictionary.get(code));
+			writeLongs(out, store.getIdColumn());
+			writeInts(out, store.getLatitudeColumn());
+			writeInts(out, store.getLongitudeColumn());
+			writeInts(out, store.getTagStartColumn());
+			writeInts(out, store.getTagCodeColumn());
+			out.writeInt(nodeNames.size());
+			for (Map.Entry<String, Integer> name : nodeNames.entrySet()) {
+				out.writeInt(dictionary.lookup(name.getKey()));
+				out.writeInt(name.getValue());
+			}
+			out.writeInt(ways.size());
+			int ordinalCount = 0, tagCount = 0;
+			for (Way way : ways) {
+				writeString(out, way.getID());
+				ordinalCount += way.size();
+				tagCount += way.getTagCodes().length;
+			}
+			// Ways as offsets into one array of ordinals and one of tag codes.
+			out.writeInt(ordinalCount);
+			for (Way way : ways)
+				out.writeInt(way.size());
+			for (Way way : ways) {
+				for (int i = 0; i < way.size(); i++)
+					out.writeInt(way.getOrdinal(i));
+			}
+			out.writeInt(tagCount);
+			for (Way way : ways)
+				out.writeInt(way.getTagCodes().length);
+			for (Way way : ways) {
+				for (int code : way.getTagCodes())
+					out.writeInt(code);
+			}
+			if (roadGraph != null) {
+				writeInts(out, roadGraph.getOffsets());
+				writeInts(out, roadGraph.getTargets());
+				out.writeInt(roadGraph.getWeights().length);
+				for (double weight : roadGraph.getWeights())
+					out.writeDouble(weight);
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+		Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a snapshot back. Whether it is current should be checked first with isCurrent.
+	 * @param snapshot The snapshot file.
+	 * @return The map held in the snapshot.
+	 * @throws IOException If the file can't be read or is not a snapshot.
+	 */
+	public static MapSnapshot read(File snapshot) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot too large to map");
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			try {
+				return read(buffer);
+			} catch (RuntimeException e) {
+				// Buffer underflows and bad indices mean the file is truncated or corrupt.
+				throw new IOException("Corrupt snapshot " + snapshot, e);
+			}
+		}
+	}
+
+	private static MapSnapshot read(ByteBuffer buffer) throws IOException
+	{
+		if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION)
+			throw new IOException("Not a map snapshot");
+		buffer.getLong();
+		buffer.getLong();
+		buffer.getInt();
+		int flags = buffer.getInt();
+		TagDictionary dictionary = new TagDictionary();
+		int dictionarySize = buffer.getInt();
+		for (int code = 0; code < dictionarySize; code++)
+			dictionary.intern(readString(buffer));
+		long[] ids = readLongs(buffer);
+		int[] latitudes = readInts(buffer);
+		int[] longitudes = readInts(buffer);
+		int[] tagStarts = readInts(buffer);
+		int[] tagCodes = readInts(buffer);
+		NodeStore store = new NodeStore(dictionary, ids, latitudes, longitudes, tagStarts, tagCodes);
+		MapDataBuilder builder = new MapDataBuilder(store);
+		int nameCount = buffer.getInt();
+		for (int i = 0; i < nameCount; i++) {
+			String name = dictionary.get(buffer.getInt());
+			builder.addNodeName(name, buffer.getInt());
+		}
+		int wayCount = buffer.getInt();
+		String[] wayIds = new String[wayCount];
+		for (int w = 0; w < wayCount; w++)
+			wayIds[w] = readString(buffer);
+		int ordinalCount = buffer.getInt();
+		int[] lengths = bulkInts(buffer, wayCount);
+		int[] ordinals = bulkInts(buffer, ordinalCount);
+		int codeCount = buffer.getInt();
+		int[] tagLengths = bulkInts(buffer, wayCount);
+		int[] codes = bulkInts(buffer, codeCount);
+		int ordinal = 0, code = 0;
+		for (int w = 0; w < wayCount; w++) {
+			Way way = new Way(wayIds[w], store, Arrays.copyOfRange(ordinals, ordinal, ordinal + lengths[w]));
+			way.setTagCodes(Arrays.copyOfRange(codes, code, code + tagLengths[w]));
+			ordinal += lengths[w];
+			code += tagLengths[w];
+			builder.addWay(way);
+		}
+		RoadGraph roadGraph = null;
+		if ((flags & HAS_GRAPH) != 0) {
+			int[] offsets = readInts(buffer);
+			int[] targets = readInts(buffer);
+			double[] weights = new double[buffer.getInt()];
+			buffer.asDoubleBuffer().get(weights);
+			buffer.position(buffer.position() + weights.length * 8);
+			roadGraph = new RoadGraph(store, offsets, targets, weights);
+		}
+		return new MapSnapshot(builder, roadGraph);
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (int value : values)
+			out.writeInt(value);
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (long value : values)
+			out.writeLong(value);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int[] readInts(ByteBuffer buffer)
+	{
+		return bulkInts(buffer, buffer.getInt());
+	}
+
+	/**
+	 * Copies a number of ints out of the buffer in one go.
+	 */
+	private static int[] bulkInts(ByteBuffer buffer, int count)
+	{
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + count * 4);
+		return values;
+	}
+
+	private static long[] readLongs(ByteBuffer buffer)
+	{
+		long[] values = new long[buffer.getInt()];
+		buffer.asLongBuffer().get(values);
+		buffer.position(buffer.position() + values.length * 8);
+		return values;
+	}
+}
@@ -6,30 +6,48 @@
  */
 public class Node extends OSMData{
 
-	private double latitude;
-	private double longitude;
+	// The store and ordinal of a parsed node, which is a view onto the NodeStore. Nodes that are not part of a file,
+	// such as the current location, keep their own coordinates instead and have no store.
+	private final NodeStore store;
+	private final int ordinal;
+	private final double latitude;
+	private final double longitude;
 	
 	public Node(double latitude, double longitude)
 	{
-		super("Dummy Node");
-		this.latitude = latitude;
-		this.longitude = longitude;
+		this("Dummy Node", latitude, longitude);
 	}
 	
 	public Node(String id, double latitude, double longitude)
 	{
 		super(id);
+		this.store = null;
+		this.ordinal = -1;
 		this.latitude = latitude;
 		this.longitude = longitude;
 	}
 	
+	/**
+	 * Creates a view of a node kept in a NodeStore.
+	 * @param store The store holding the node.
+	 * @param ordinal The ordinal of the node in the store.
+	 */
+	Node(NodeStore store, int ordinal)
+	{
+		super(null);
+		this.store = store;
+		this.ordinal = ordinal;
+		this.latitude = 0;
+		this.longitude = 0;
+	}
+	
 	/**
 	 * Returns the latitude of this Node.
 	 * @return the latitude of the node.
 	 */
 	public double getLatitude()
 	{
-		return latitude;
+		return store == null ? latitude : store.getLatitude(ordinal);
 	}
 	/**
 	 * Returns the longitude of this Node.
@@ -38,7 +56,69 @@ public class Node extends OSMData{
 	
 	public double getLongitude()
 	{
-		return longitude;
+		return store == null ? longitude : store.getLongitude(ordinal);
+	}
+	
+	/**
+	 * Returns the store this node is kept in.
+	 * @return The node store, or null if this node is not part of a parsed file.
+	 */
+	public NodeStore getNodeStore()
+	{
+		return store;
+	}
+	
+	/**
+	 * Returns the ordinal of this node in its store.
+	 * @return The ordinal of the node, or -1 if this node is not part of a parsed file.
+	 */
+	public int getOrdinal()
+	{
+		return ordinal;
+	}
+	
+	@Override
+	public String getID()
+	{
+		return store == null ? super.getID() : Long.toString(store.getId(ordinal));
+	}
+	
+	@Override
+	public String getTag(String key)
+	{
+		return store == null ? super.getTag(key) : store.getTag(ordinal, key);
+	}
+	
+	@Override
+	public void addTag(String key, String value)
+	{
+		if (store == null)
+			super.addTag(key, value);
+		else
+			store.addTag(ordinal, key, value);
+	}
+	
+	/**
+	 * Two views are equal when they refer to the same node of the same store, nodes outside of a store are equal
+	 * when their ids are.
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+			return true;
+		if (!(other instanceof Node))
+			return false;
+		Node otherNode = (Node) other;
+		if (store != null || otherNode.store != null)
+			return store == otherNode.store && ordinal == otherNode.ordinal;
+		return super.equals(other);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return store == null ? super.hashCode() : ordinal;
 	}
 	
 	/**
@@ -47,12 +127,25 @@ public class Node extends OSMData{
 	 * @return The distance between the two nodes.
 	 */
 	public double distanceTo(Node other)
+	{
+		return distance(getLatitude(), getLongitude(), other.getLatitude(), other.getLongitude());
+	}
+	
+	/**
+	 * Returns the distance between two locations using Haversine's algorithm.
+	 * @param latitude1 The latitude of the first location.
+	 * @param longitude1 The longitude of the first location.
+	 * @param latitude2 The latitude of the second location.
+	 * @param longitude2 The longitude of the second location.
+	 * @return The distance between the two locations in meters.
+	 */
+	public static double distance(double latitude1, double longitude1, double latitude2, double longitude2)
 	{
 		long radius = 6371000;
-		double latRad = Math.toRadians(latitude);
-		double latRad2 = Math.toRadians(other.getLatitude());
-		double deltaLatRad = Math.toRadians(other.getLatitude() - latitude);
-		double deltaLonRad = Math.toRadians(other.getLongitude() - longitude);
+		double latRad = Math.toRadians(latitude1);
+		double latRad2 = Math.toRadians(latitude2);
+		double deltaLatRad = Math.toRadians(latitude2 - latitude1);
+		double deltaLonRad = Math.toRadians(longitude2 - longitude1);
 		double term1 = Math.pow(Math.sin(deltaLatRad/2), 2) + Math.cos(latRad) *Math.cos(latRad2) *Math.pow(Math.sin(deltaLonRad/2), 2);
 		double term2 = 2 * Math.atan2(Math.sqrt(term1), Math.sqrt(1-term1));
 		return radius * term2;
@@ -0,0 +1,262 @@
+/**
+ * A static k-d tree over the coordinates of every node of a RoadGraph, answering nearest and k-nearest node queries
+ * without looking at every node. Coordinates are projected onto a plane around the middle latitude of the map
+ * (longitude scaled by the cosine of that latitude), which over the size of a map ranks nodes the same way as the
+ * haversine distance. The tree is implicit: the middle entry of every range of the arrays splits the rest of the range,
+ * alternating between the two axes, so it is stored entirely in primitive arrays.
+ * @author Jonathan Yin
+ *
+ */
+public class NodeIndex {
+
+	private final RoadGraph graph;
+	private final double longitudeScale;
+	// Ordinals and projected coordinates of the nodes in tree order.
+	private final int[] ordinals;
+	private final double[] xs;
+	private final double[] ys;
+
+	/**
+	 * Builds the index over every node of a road graph.
+	 * @param graph The road graph whose nodes are indexed.
+	 */
+	public NodeIndex(RoadGraph graph)
+	{
+		this.graph = graph;
+		int size = graph.size();
+		double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			double latitude = graph.getLatitude(i);
+			minLatitude = Math.min(minLatitude, latitude);
+			maxLatitude = Math.max(maxLatitude, latitude);
+		}
+		longitudeScale = size == 0 ? 1 : Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2));
+		ordinals = new int[size];
+		xs = new double[size];
+		ys = new double[size];
+		for (int i = 0; i < size; i++) {
+			ordinals[i] = i;
+			xs[i] = graph.getLongitude(i) * longitudeScale;
+			ys[i] = graph.getLatitude(i);
+		}
+		build(0, size, 0);
+	}
+
+	/**
+	 * Returns the number of nodes in the index.
+	 * @return The number of nodes indexed.
+	 */
+	public int size()
+	{
+		return ordinals.length;
+	}
+
+	/**
+	 * Finds the node closest to a location.
+	 * @param latitude The latitude of the location.
+	 * @param longitude The longitude of the location.
+	 * @return The ordinal of the closest node, or -1 if the index is empty.
+	 */
+	public int nearest(double latitude, double longitude)
+	{
+		if (ordinals.length == 0)
+			return -1;
+		int best = nearest(0, ordinals.length, 0, longitude * longitudeScale, latitude, -1);
+		return ordinals[best];
+	}
+
+	/**
+	 * Finds the k nodes closest to a location.
+	 * @param latitude The latitude of the location.
+	 * @param longitude The longitude of the location.
+	 * @param k The number of nodes to find.
+	 * @return The ordinals of the closest nodes ordered from closest to farthest, fewer than k if the index is smaller.
+	 */
+	public int[] nearest(double latitude, double longitude, int k)
+	{
+		k = Math.min(k, ordinals.length);
+		// A max heap of the best entries so far, the farthest of them on top.
+		int[] heap = new int[k];
+		double[] heapDistances = new double[k];
+		int found = k == 0 ? 0 : nearest(0, ordinals.length, 0, longitude * longitudeScale, latitude, heap, heapDistances, 0);
+		int[] result = new int[found];
+		// Popping the heap yields the entries from farthest to closest.
+		for (int i = found - 1; i >= 0; i--) {
+			result[i] = ordinals[heap[0]];
+			heap[0] = heap[i];
+			heapDistances[0] = heapDistances[i];
+			siftDown(heap, heapDistances, i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the road graph whose nodes are indexed.
+	 * @return The road graph.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * Searches the subtree of the range [low, high) for an entry closer than the best so far.
+	 * @return The tree position of the closest entry found.
+	 */
+	private int nearest(int low, int high, int depth, double x, double y, int best)
+	{
+		if (low >= high)
+			return best;
+		int middle = (low + high) >>> 1;
+		double dx = xs[middle] - x;
+		double dy = ys[middle] - y;
+		if (best < 0 || dx * dx + dy * dy < distanceSquared(best, x, y))
+			best = middle;
+		double split = (depth & 1) == 0 ? dx : dy;
+		// Search the side the location is on first, then the other side only if it could hold something closer.
+		if (split > 0) {
+			best = nearest(low, middle, depth + 1, x, y, best);
+			if (split * split < distanceSquared(best, x, y))
+				best = nearest(middle + 1, high, depth + 1, x, y, best);
+		} else {
+			best = nearest(middle + 1, high, depth + 1, x, y, best);
+			if (split * split < distanceSquared(best, x, y))
+				best = nearest(low, middle, depth + 1, x, y, best);
+		}
+		return best;
+	}
+
+	/**
+	 * Searches the subtree of the range [low, high) for entries closer than the k best so far.
+	 * @return The number of entries in the heap.
+	 */
+	private int nearest(int low, int high, int depth, double x, double y, int[] heap, double[] heapDistances, int count)
+	{
+		if (low >= high)
+			return count;
+		int middle = (low + high) >>> 1;
+		double distance = distanceSquared(middle, x, y);
+		if (count < heap.length) {
+			// Add to the bottom of the heap and sift it up.
+			int position = count++;
+			while (position > 0) {
+				int parent = (position - 1) / 2;
+				if (heapDistances[parent] >= distance)
+					break;
+				heap[position] = heap[parent];
+				heapDistances[position] = heapDistances[parent];
+				position = parent;
+			}
+			heap[position] = middle;
+			heapDistances[position] = distance;
+		} else if (distance < heapDistances[0]) {
+			heap[0] = middle;
+			heapDistances[0] = distance;
+			siftDown(heap, heapDistances, count);
+		}
+		double split = (depth & 1) == 0 ? xs[middle] - x : ys[middle] - y;
+		int near = split > 0 ? low : middle + 1;
+		int nearHigh = split > 0 ? middle : high;
+		int far = split > 0 ? middle + 1 : low;
+		int farHigh = split > 0 ? high : middle;
+		count = nearest(near, nearHigh, depth + 1, x, y, heap, heapDistances, count);
+		if (count < heap.length || split * split < heapDistances[0])
+			count = nearest(far, farHigh, depth + 1, x, y, heap, heapDistances, count);
+		return count;
+	}
+
+	private static void siftDown(int[] heap, double[] heapDistances, int count)
+	{
+		if (count == 0)
+			return;
+		int entry = heap[0];
+		double distance = heapDistances[0];
+		int position = 0;
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= count)
+				break;
+			if (child + 1 < count && heapDistances[child + 1] > heapDistances[child])
+				child++;
+			if (heapDistances[child] <= distance)
+				break;
+			heap[position] = heap[child];
+			heapDistances[position] = heapDistances[child];
+			position = child;
+		}
+		heap[position] = entry;
+		heapDistances[position] = distance;
+	}
+
+	private double distanceSquared(int position, double x, double y)
+	{
+		double dx = xs[position] - x;
+		double dy = ys[position] - y;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Arranges the range [low, high) so that its middle entry splits the rest along the axis of this depth, then
+	 * does the same for both halves.
+	 */
+	private void build(int low, int high, int depth)
+	{
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			select(low, high - 1, middle, (depth & 1) == 0 ? xs : ys);
+			build(low, middle, depth + 1);
+			low = middle + 1;
+			depth++;
+		}
+	}
+
+	/**
+	 * Quickselect: moves the k-th smallest coordinate of the range [left, right] to position k, with smaller ones before
+	 * it and larger ones after it.
+	 */
+	private void select(int left, int right, int k, double[] keys)
+	{
+		while (right > left) {
+			int middle = (left + right) >>> 1;
+			// Median of three as the pivot.
+			if (keys[middle] < keys[left])
+				swap(middle, left);
+			if (keys[right] < keys[left])
+				swap(right, left);
+			if (keys[right] < keys[middle])
+				swap(right, middle);
+			double pivot = keys[middle];
+			int i = left, j = right;
+			while (i <= j) {
+				while (keys[i] < pivot)
+					i++;
+				while (keys[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		int ordinal = ordinals[i];
+		ordinals[i] = ordinals[j];
+		ordinals[j] = ordinal;
+		double x = xs[i];
+		xs[i] = xs[j];
+		xs[j] = x;
+		double y = ys[i];
+		ys[i] = ys[j];
+		ys[j] = y;
+	}
+}
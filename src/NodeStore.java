@@ -0,0 +1,461 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Column oriented storage for every node of a parsed OSM file. Rather than one object per node, the ids and
+ * coordinates are kept in parallel primitive arrays indexed by the node's ordinal, the order the node was added in.
+ * Coordinates are stored as whole multiples of 10^-7 degrees, the precision OSM files are written with. Tags are
+ * interned into a TagDictionary and the codes of all nodes are kept one after another in a single array, so a node
+ * without tags costs only its offset. Node objects handed out by the store are views onto an ordinal, so they
+ * can be created whenever needed and thrown away. Tags added to a node after later nodes were added are kept aside
+ * by ordinal until the columns are next copied or moved.
+ * @author Jonathan Yin
+ *
+ */
+public class NodeStore {
+
+	// Scale of the fixed point coordinates, one unit is 10^-7 degrees or about a centimeter.
+	private static final double COORDINATE_SCALE = 1e7;
+
+	private long[] ids;
+	private int[] latitudes;
+	private int[] longitudes;
+	private int size;
+	private LongIntHashMap ordinals;
+	// The tag codes of node i are stored from tagStarts[i] up to the start of the next node.
+	private int[] tagStarts;
+	private int[] tagCodes;
+	private int tagLength;
+	// Tag codes added to nodes other than the last one, by ordinal, or null if there are none.
+	private Map<Integer, int[]> lateTags;
+	private final TagDictionary dictionary;
+	private final List<Node> nodeView;
+
+	public NodeStore()
+	{
+		this(1024, new TagDictionary());
+	}
+
+	/**
+	 * Creates a store sized for a number of nodes.
+	 * @param capacity The number of nodes expected, the store grows past it if needed.
+	 * @param dictionary The dictionary the tags of the nodes are interned into.
+	 */
+	public NodeStore(int capacity, TagDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+		capacity = Math.max(capacity, 16);
+		ids = new long[capacity];
+		latitudes = new int[capacity];
+		longitudes = new int[capacity];
+		tagStarts = new int[capacity];
+		tagCodes = new int[64];
+		ordinals = new LongIntHashMap(capacity);
+		nodeView = new NodeList();
+	}
+
+	/**
+	 * Creates a store over columns read back from a MapSnapshot, which are used as they are.
+	 */
+	NodeStore(TagDictionary dictionary, long[] ids, int[] latitudes, int[] longitudes, int[] tagStarts, int[] tagCodes)
+	{
+		this.dictionary = dictionary;
+		this.ids = ids;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.tagStarts = tagStarts;
+		this.tagCodes = tagCodes;
+		size = ids.length;
+		tagLength = tagCodes.length;
+		ordinals = new LongIntHashMap(size);
+		for (int i = 0; i < size; i++)
+			ordinals.put(ids[i], i);
+		nodeView = new NodeList();
+	}
+
+	/**
+	 * Adds a node to the store.
+	 * @param id The OSM id of the node.
+	 * @param latitude The latitude of the node.
+	 * @param longitude The longitude of the node.
+	 * @return The ordinal of the new node.
+	 */
+	public int add(long id, double latitude, double longitude)
+	{
+		if (size == ids.length) {
+			int capacity = Math.max(size + (size >> 1), 16);
+			ids = Arrays.copyOf(ids, capacity);
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			tagStarts = Arrays.copyOf(tagStarts, capacity);
+		}
+		tagStarts[size] = tagLength;
+		ids[size] = id;
+		latitudes[size] = (int) Math.round(latitude * COORDINATE_SCALE);
+		longitudes[size] = (int) Math.round(longitude * COORDINATE_SCALE);
+		ordinals.put(id, size);
+		return size++;
+	}
+
+	/**
+	 * Adds every node of another store after the nodes of this one, in order. The ordinal of a node of the other store
+	 * becomes its old ordinal plus the size this store had before.
+	 * @param other The store to copy the nodes of, whose tags must be interned into the same dictionary.
+	 * @throws IllegalArgumentException If the stores use different tag dictionaries.
+	 */
+	public void append(NodeStore other)
+	{
+		if (other.dictionary != dictionary)
+			throw new IllegalArgumentException("The stores intern their tags into different dictionaries");
+		mergeLateTags();
+		other.mergeLateTags();
+		int count = other.size;
+		if (size + count > ids.length)
+			grow(size + count);
+		System.arraycopy(other.ids, 0, ids, size, count);
+		System.arraycopy(other.latitudes, 0, latitudes, size, count);
+		System.arraycopy(other.longitudes, 0, longitudes, size, count);
+		for (int i = 0; i < count; i++) {
+			tagStarts[size + i] = other.tagStarts[i] + tagLength;
+			ordinals.put(other.ids[i], size + i);
+		}
+		if (tagLength + other.tagLength > tagCodes.length)
+			tagCodes = Arrays.copyOf(tagCodes, Math.max(tagCodes.length * 2, tagLength + other.tagLength));
+		System.arraycopy(other.tagCodes, 0, tagCodes, tagLength, other.tagLength);
+		tagLength += other.tagLength;
+		size += count;
+	}
+
+	/**
+	 * Adds a tag to a node, replacing the value of a tag with the same key. Tags of the most recently added node go
+	 * straight into the columns, tags of earlier nodes are kept aside until the columns are next rebuilt.
+	 * @param ordinal The ordinal of the node.
+	 * @param key The key of the tag.
+	 * @param value The value of the tag.
+	 */
+	public void addTag(int ordinal, String key, String value)
+	{
+		if (ordinal < 0 || ordinal >= size)
+			throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", Size: " + size);
+		int keyCode = dictionary.intern(key);
+		int valueCode = dictionary.intern(value);
+		int end = tagEnd(ordinal);
+		for (int i = tagStarts[ordinal]; i < end; i += 2) {
+			if (tagCodes[i] == keyCode) {
+				tagCodes[i + 1] = valueCode;
+				return;
+			}
+		}
+		if (ordinal != size - 1) {
+			addLateTag(ordinal, keyCode, valueCode);
+			return;
+		}
+		if (tagLength + 2 > tagCodes.length)
+			tagCodes = Arrays.copyOf(tagCodes, Math.max(tagCodes.length * 2, 64));
+		tagCodes[tagLength++] = keyCode;
+		tagCodes[tagLength++] = valueCode;
+	}
+
+	private void addLateTag(int ordinal, int keyCode, int valueCode)
+	{
+		if (lateTags == null)
+			lateTags = new HashMap<Integer, int[]>();
+		int[] codes = lateTags.get(ordinal);
+		if (codes == null) {
+			lateTags.put(ordinal, new int[] { keyCode, valueCode });
+			return;
+		}
+		for (int i = 0; i < codes.length; i += 2) {
+			if (codes[i] == keyCode) {
+				codes[i + 1] = valueCode;
+				return;
+			}
+		}
+		codes = Arrays.copyOf(codes, codes.length + 2);
+		codes[codes.length - 2] = keyCode;
+		codes[codes.length - 1] = valueCode;
+		lateTags.put(ordinal, codes);
+	}
+
+	/**
+	 * Moves the tags kept aside by addTag into the columns, so that the tags of every node are in tagCodes again.
+	 */
+	private void mergeLateTags()
+	{
+		if (lateTags == null)
+			return;
+		int extra = 0;
+		for (int[] codes : lateTags.values())
+			extra += codes.length;
+		int[] merged = new int[Math.max(tagLength + extra, 64)];
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			int start = tagStarts[i];
+			int end = tagEnd(i);
+			tagStarts[i] = length;
+			System.arraycopy(tagCodes, start, merged, length, end - start);
+			length += end - start;
+			int[] codes = lateTags.get(i);
+			if (codes != null) {
+				System.arraycopy(codes, 0, merged, length, codes.length);
+				length += codes.length;
+			}
+		}
+		tagCodes = merged;
+		tagLength = length;
+		lateTags = null;
+	}
+
+	/**
+	 * Returns the number of nodes in the store.
+	 * @return The number of nodes, ordinals range from 0 up to this value.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Finds the ordinal of the node with an OSM id.
+	 * @param id The id of the node.
+	 * @return The ordinal of the node, or -1 if no node has that id.
+	 */
+	public int ordinalOf(long id)
+	{
+		return ordinals.get(id);
+	}
+
+	/**
+	 * Returns the OSM id of a node.
+	 * @param ordinal The ordinal of the node.
+	 * @return The id of the node.
+	 */
+	public long getId(int ordinal)
+	{
+		return ids[ordinal];
+	}
+
+	/**
+	 * Returns the latitude of a node.
+	 * @param ordinal The ordinal of the node.
+	 * @return The latitude of the node.
+	 */
+	public double getLatitude(int ordinal)
+	{
+		return latitudes[ordinal] / COORDINATE_SCALE;
+	}
+
+	/**
+	 * Returns the longitude of a node.
+	 * @param ordinal The ordinal of the node.
+	 * @return The longitude of the node.
+	 */
+	public double getLongitude(int ordinal)
+	{
+		return longitudes[ordinal] / COORDINATE_SCALE;
+	}
+
+	/**
+	 * Obtains a tag of a node.
+	 * @param ordinal The ordinal of the node.
+	 * @param key The tag key.
+	 * @return The value of the tag, or null if the node doesn't have it.
+	 */
+	public String getTag(int ordinal, String key)
+	{
+		int start = tagStarts[ordinal];
+		int end = tagEnd(ordinal);
+		int[] late = lateTags == null ? null : lateTags.get(ordinal);
+		if (start == end && late == null)
+			return null;
+		int code = dictionary.lookup(key);
+		if (code < 0)
+			return null;
+		int value = TagDictionary.find(tagCodes, start, end, code);
+		if (value < 0 && late != null)
+			value = TagDictionary.find(late, 0, late.length, code);
+		return value < 0 ? null : dictionary.get(value);
+	}
+
+	/**
+	 * Returns the dictionary the tags of the nodes are interned into, which the ways of the same file share.
+	 * @return The tag dictionary.
+	 */
+	public TagDictionary getTagDictionary()
+	{
+		return dictionary;
+	}
+
+	/**
+	 * Returns a node object for an ordinal. Views of the same ordinal are equal to each other.
+	 * @param ordinal The ordinal of the node.
+	 * @return A view of the node.
+	 */
+	public Node getNode(int ordinal)
+	{
+		if (ordinal < 0 || ordinal >= size)
+			throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", Size: " + size);
+		return new Node(this, ordinal);
+	}
+
+	/**
+	 * Returns every node of the store as a read only list in ordinal order. The list reflects nodes added later.
+	 * @return The nodes of the store.
+	 */
+	public List<Node> getNodes()
+	{
+		return nodeView;
+	}
+
+	/**
+	 * Returns a read only list of the nodes with the given ordinals.
+	 * @param nodeOrdinals The ordinals of the nodes, which the list reads from directly.
+	 * @return The nodes with those ordinals, in the same order.
+	 */
+	public List<Node> getNodes(int[] nodeOrdinals)
+	{
+		return new OrdinalList(nodeOrdinals);
+	}
+
+	/**
+	 * Determines whether a node has any tags.
+	 * @param ordinal The ordinal of the node.
+	 * @return true if the node has at least one tag.
+	 */
+	public boolean hasTags(int ordinal)
+	{
+		return tagEnd(ordinal) > tagStarts[ordinal] || (lateTags != null && lateTags.containsKey(ordinal));
+	}
+
+	/**
+	 * Removes nodes from the store, moving the nodes kept down so that ordinals stay contiguous. Nodes handed out
+	 * before are no longer valid afterwards.
+	 * @param keep Whether each node, by ordinal, is kept.
+	 * @return The new ordinal of each node by its old one, -1 for nodes removed.
+	 */
+	public int[] retain(boolean[] keep)
+	{
+		mergeLateTags();
+		int[] remap = new int[size];
+		int kept = 0;
+		int codes = 0;
+		ordinals.clear();
+		for (int i = 0; i < size; i++) {
+			if (!keep[i]) {
+				remap[i] = -1;
+				continue;
+			}
+			// Nodes and tags only ever move down, so they can be moved in place.
+			int start = tagStarts[i];
+			int end = tagEnd(i);
+			ids[kept] = ids[i];
+			latitudes[kept] = latitudes[i];
+			longitudes[kept] = longitudes[i];
+			tagStarts[kept] = codes;
+			System.arraycopy(tagCodes, start, tagCodes, codes, end - start);
+			codes += end - start;
+			ordinals.put(ids[kept], kept);
+			remap[i] = kept++;
+		}
+		size = kept;
+		tagLength = codes;
+		return remap;
+	}
+
+	private int tagEnd(int ordinal)
+	{
+		return ordinal + 1 < size ? tagStarts[ordinal + 1] : tagLength;
+	}
+
+	/**
+	 * Shrinks the arrays of the store to the number of nodes added, once no more nodes are expected.
+	 */
+	public void trimToSize()
+	{
+		mergeLateTags();
+		ids = Arrays.copyOf(ids, size);
+		latitudes = Arrays.copyOf(latitudes, size);
+		longitudes = Arrays.copyOf(longitudes, size);
+		tagStarts = Arrays.copyOf(tagStarts, size);
+		tagCodes = Arrays.copyOf(tagCodes, tagLength);
+	}
+
+	// The columns of the store, trimmed to its size, for MapSnapshot to write out.
+
+	long[] getIdColumn()
+	{
+		return Arrays.copyOf(ids, size);
+	}
+
+	int[] getLatitudeColumn()
+	{
+		return Arrays.copyOf(latitudes, size);
+	}
+
+	int[] getLongitudeColumn()
+	{
+		return Arrays.copyOf(longitudes, size);
+	}
+
+	int[] getTagStartColumn()
+	{
+		mergeLateTags();
+		return Arrays.copyOf(tagStarts, size);
+	}
+
+	int[] getTagCodeColumn()
+	{
+		mergeLateTags();
+		return Arrays.copyOf(tagCodes, tagLength);
+	}
+
+	private void grow(int minimum)
+	{
+		int capacity = Math.max(Math.max(ids.length + (ids.length >> 1), minimum), 16);
+		ids = Arrays.copyOf(ids, capacity);
+		latitudes = Arrays.copyOf(latitudes, capacity);
+		longitudes = Arrays.copyOf(longitudes, capacity);
+		tagStarts = Arrays.copyOf(tagStarts, capacity);
+	}
+
+	private class NodeList extends AbstractList<Node> implements RandomAccess {
+
+		@Override
+		public Node get(int index)
+		{
+			return getNode(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+
+	private class OrdinalList extends AbstractList<Node> implements RandomAccess {
+
+		private final int[] nodeOrdinals;
+
+		OrdinalList(int[] nodeOrdinals)
+		{
+			this.nodeOrdinals = nodeOrdinals;
+		}
+
+		@Override
+		public Node get(int index)
+		{
+			return new Node(NodeStore.this, nodeOrdinals[index]);
+		}
+
+		@Override
+		public int size()
+		{
+			return nodeOrdinals.length;
+		}
+	}
+}
@@ -1,5 +1,4 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Represents a piece of data that is parsed throughout an OSM file. These data points share common traits
@@ -10,12 +9,25 @@ import java.util.Map;
 public class OSMData {
 
 	private String id;
-	private Map<String, String> tags;
+	// Codes of the tags in the dictionary, each key followed by its value.
+	private TagDictionary dictionary;
+	private int[] tags;
 	
 	public OSMData(String id)
+	{
+		this(id, null);
+	}
+	
+	/**
+	 * Creates a data point whose tags are interned into a dictionary shared with the rest of its file.
+	 * @param id The id of the data point.
+	 * @param dictionary The dictionary for the tags, or null to create one when the first tag is added.
+	 */
+	public OSMData(String id, TagDictionary dictionary)
 	{
 		this.id = id;
-		tags = new HashMap<String, String>();
+		this.dictionary = dictionary;
+		tags = TagDictionary.NO_TAGS;
 	}
 	
 	
@@ -35,7 +47,13 @@ public class OSMData {
 	 */
 	public String getTag(String key)
 	{
-		return tags.get(key);
+		if (tags.length == 0)
+			return null;
+		int code = dictionary.lookup(key);
+		if (code < 0)
+			return null;
+		int value = TagDictionary.find(tags, 0, tags.length, code);
+		return value < 0 ? null : dictionary.get(value);
 	}
 	
 	/**
@@ -45,7 +63,39 @@ public class OSMData {
 	 */
 	public void addTag(String key,String value)
 	{
-		tags.put(key,value);
+		// A tag missing its key or value can never be looked up.
+		if (key == null || value == null)
+			return;
+		if (dictionary == null)
+			dictionary = new TagDictionary();
+		int keyCode = dictionary.intern(key);
+		int valueCode = dictionary.intern(value);
+		for (int i = 0; i < tags.length; i += 2) {
+			if (tags[i] == keyCode) {
+				tags[i + 1] = valueCode;
+				return;
+			}
+		}
+		int length = tags.length;
+		tags = Arrays.copyOf(tags, length + 2);
+		tags[length] = keyCode;
+		tags[length + 1] = valueCode;
+	}
+	
+	/**
+	 * Returns the codes of the tags of this data point in its dictionary, each key followed by its value.
+	 */
+	int[] getTagCodes()
+	{
+		return tags;
+	}
+	
+	/**
+	 * Replaces the tags of this data point with codes of its dictionary, as read back from a MapSnapshot.
+	 */
+	void setTagCodes(int[] codes)
+	{
+		tags = codes.length == 0 ? TagDictionary.NO_TAGS : codes;
 	}
 	
 	/**
@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming parser for OSM XML files that reads bytes straight out of a buffer instead of going through SAX. Only
+ * the node, way, nd and tag elements are recognised, by their names in bytes, and every other element is skipped.
+ * Attributes are found by comparing their names in place, numbers are parsed from their digits without building a
+ * String, and attributes that are not used (user, timestamp, changeset, version) are stepped over. Strings are only
+ * created for ids of ways and for tag keys and values, and short ones that repeat are reused from a small cache.
+ * @author Jonathan Yin
+ *
+ */
+public class OSMStreamParser {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int STRING_CACHE_SIZE = 4096;
+	private static final int CACHED_STRING_LENGTH = 32;
+	// Exactly representable powers of ten, dividing a mantissa below 2^53 by one of them rounds like parseDouble.
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final byte[] NODE = bytes("node");
+	private static final byte[] WAY = bytes("way");
+	private static final byte[] ND = bytes("nd");
+	private static final byte[] TAG = bytes("tag");
+	private static final byte[] ID = bytes("id");
+	private static final byte[] LAT = bytes("lat");
+	private static final byte[] LON = bytes("lon");
+	private static final byte[] REF = bytes("ref");
+	private static final byte[] K = bytes("k");
+	private static final byte[] V = bytes("v");
+
+	private final InputStream in;
+	private final MapDataBuilder builder;
+	private byte[] buffer;
+	// Bytes from position up to limit have been read but not parsed yet.
+	private int position;
+	private int limit;
+	private boolean endOfStream;
+	// Offset in the stream of the start of the buffer, for error messages.
+	private long bufferOffset;
+	// Bounds of the attribute value found by the last call to attribute.
+	private int valueStart;
+	private int valueEnd;
+	private final byte[][] cachedBytes = new byte[STRING_CACHE_SIZE][];
+	private final String[] cachedStrings = new String[STRING_CACHE_SIZE];
+
+	/**
+	 * Creates a parser reading from a stream.
+	 * @param in The stream of the OSM file, the parser does its own buffering.
+	 * @param builder The builder the elements are reported to.
+	 */
+	public OSMStreamParser(InputStream in, MapDataBuilder builder)
+	{
+		this.in = in;
+		this.builder = builder;
+		buffer = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Parses the whole stream. The stream is not closed.
+	 * @throws IOException If the stream can't be read or an element isn't closed.
+	 */
+	public void parse() throws IOException
+	{
+		while (true) {
+			int start = find((byte) '<', position);
+			if (start < 0)
+				return;
+			position = start;
+			// Reading the rest of the element may move it within the buffer, position follows its start.
+			int end = endOfElement();
+			parseElement(position + 1, end);
+			position = end + 1;
+		}
+	}
+
+	/**
+	 * Handles the markup between a '<' and its '>', both excluded.
+	 */
+	private void parseElement(int start, int end) throws IOException
+	{
+		if (buffer[start] == '/') {
+			if (matches(start + 1, end, NODE))
+				builder.endNode();
+			else if (matches(start + 1, end, WAY))
+				builder.endWay();
+			return;
+		}
+		if (buffer[start] == '?' || buffer[start] == '!')
+			return;
+		boolean empty = buffer[end - 1] == '/';
+		if (empty)
+			end--;
+		if (matches(start, end, NODE)) {
+			int attributes = start + NODE.length;
+			long id = attribute(attributes, end, ID) ? parseLong(valueStart, valueEnd) : 0;
+			double latitude = attribute(attributes, end, LAT) ? parseDouble(valueStart, valueEnd) : 0;
+			double longitude = attribute(attributes, end, LON) ? parseDouble(valueStart, valueEnd) : 0;
+			builder.startNode(id, latitude, longitude);
+			if (empty)
+				builder.endNode();
+		} else if (matches(start, end, ND)) {
+			if (attribute(start + ND.length, end, REF))
+				builder.addWayNode(parseLong(valueStart, valueEnd));
+		} else if (matches(start, end, TAG)) {
+			int attributes = start + TAG.length;
+			String key = attribute(attributes, end, K) ? string(valueStart, valueEnd) : null;
+			String value = attribute(attributes, end, V) ? string(valueStart, valueEnd) : null;
+			builder.addTag(key, value);
+		} else if (matches(start, end, WAY)) {
+			int attributes = start + WAY.length;
+			builder.startWay(attribute(attributes, end, ID) ? string(valueStart, valueEnd) : "");
+			if (empty)
+				builder.endWay();
+		}
+	}
+
+	/**
+	 * Determines whether the element name at start is exactly name.
+	 */
+	private boolean matches(int start, int end, byte[] name)
+	{
+		if (end - start < name.length)
+			return false;
+		for (int i = 0; i < name.length; i++) {
+			if (buffer[start + i] != name[i])
+				return false;
+		}
+		return start + name.length == end || isWhitespace(buffer[start + name.length]);
+	}
+
+	/**
+	 * Looks for an attribute in the attributes from start to end. If it is found, its value is left between
+	 * valueStart and valueEnd.
+	 * @return true if the attribute is present.
+	 */
+	private boolean attribute(int start, int end, byte[] name)
+	{
+		int i = start;
+		while (i < end) {
+			while (i < end && isWhitespace(buffer[i]))
+				i++;
+			int nameStart = i;
+			while (i < end && buffer[i] != '=' && !isWhitespace(buffer[i]))
+				i++;
+			int nameEnd = i;
+			while (i < end && buffer[i] != '\'' && buffer[i] != '"')
+				i++;
+			if (i >= end)
+				return false;
+			byte quote = buffer[i++];
+			int quoted = i;
+			while (i < end && buffer[i] != quote)
+				i++;
+			if (nameEnd - nameStart == name.length) {
+				boolean same = true;
+				for (int j = 0; j < name.length && same; j++)
+					same = buffer[nameStart + j] == name[j];
+				if (same) {
+					valueStart = quoted;
+					valueEnd = i;
+					return true;
+				}
+			}
+			i++;
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a decimal number. Up to 18 digits can't overflow and are added up directly, anything longer or with
+	 * characters other than digits goes through Long.parseLong, so the result or exception is the same as the SAX
+	 * parser's.
+	 */
+	private long parseLong(int start, int end)
+	{
+		boolean negative = start < end && buffer[start] == '-';
+		int digitsStart = negative ? start + 1 : start;
+		if (digitsStart == end)
+			throw new NumberFormatException("Missing digits at byte " + (bufferOffset + digitsStart));
+		if (end - digitsStart > 18)
+			return Long.parseLong(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+		long value = 0;
+		for (int i = digitsStart; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				return Long.parseLong(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	private double parseDouble(int start, int end)
+	{
+		int i = start;
+		boolean negative = i < end && buffer[i] == '-';
+		if (negative || (i < end && buffer[i] == '+'))
+			i++;
+		long mantissa = 0;
+		boolean anyDigit = false;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '.' && !point) {
+				point = true;
+				continue;
+			}
+			int digit = b - '0';
+			// Exponents, long mantissas and anything unusual go through the library parser.
+			if (digit < 0 || digit > 9 || digits >= 15)
+				return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+			mantissa = mantissa * 10 + digit;
+			anyDigit = true;
+			if (mantissa != 0)
+				digits++;
+			if (point)
+				fractionDigits++;
+		}
+		if (fractionDigits >= POWERS_OF_TEN.length || !anyDigit)
+			return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes an attribute value, replacing entities and normalising whitespace as an XML parser would.
+	 */
+	private String string(int start, int end) throws IOException
+	{
+		int length = end - start;
+		boolean plain = true;
+		int hash = 0;
+		for (int i = start; i < end && plain; i++) {
+			byte b = buffer[i];
+			plain = b != '&' && b != '\t' && b != '\n' && b != '\r';
+			hash = hash * 31 + b;
+		}
+		if (!plain)
+			return decode(start, end);
+		if (length > CACHED_STRING_LENGTH)
+			return new String(buffer, start, length, StandardCharsets.UTF_8);
+		int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+		byte[] cached = cachedBytes[slot];
+		if (cached != null && cached.length == length) {
+			boolean same = true;
+			for (int i = 0; i < length && same; i++)
+				same = cached[i] == buffer[start + i];
+			if (same)
+				return cachedStrings[slot];
+		}
+		byte[] copy = new byte[length];
+		System.arraycopy(buffer, start, copy, 0, length);
+		String string = new String(copy, StandardCharsets.UTF_8);
+		cachedBytes[slot] = copy;
+		cachedStrings[slot] = string;
+		return string;
+	}
+
+	private String decode(int start, int end) throws IOException
+	{
+		byte[] bytes = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '\t' || b == '\n' || b == '\r') {
+				// A \r\n pair is a single line break.
+				if (b == '\r' && i + 1 < end && buffer[i + 1] == '\n')
+					i++;
+				bytes[length++] = ' ';
+			} else if (b == '&') {
+				int semicolon = i + 1;
+				while (semicolon < end && buffer[semicolon] != ';')
+					semicolon++;
+				String entity = new String(buffer, i + 1, semicolon - i - 1, StandardCharsets.ISO_8859_1);
+				int character;
+				if (entity.equals("amp"))
+					character = '&';
+				else if (entity.equals("lt"))
+					character = '<';
+				else if (entity.equals("gt"))
+					character = '>';
+				else if (entity.equals("quot"))
+					character = '"';
+				else if (entity.equals("apos"))
+					character = '\'';
+				else if (entity.startsWith("#x"))
+					character = Integer.parseInt(entity.substring(2), 16);
+				else if (entity.startsWith("#"))
+					character = Integer.parseInt(entity.substring(1));
+				else
+					throw new IOException("Unknown entity &" + entity + "; at byte " + (bufferOffset + i));
+				byte[] encoded = new String(Character.toChars(character)).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(encoded, 0, bytes, length, encoded.length);
+				length += encoded.length;
+				i = semicolon;
+			} else {
+				bytes[length++] = b;
+			}
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the '>' closing the markup that starts at position, skipping over quoted attribute values and comments.
+	 * @return The position of the '>'.
+	 */
+	private int endOfElement() throws IOException
+	{
+		boolean comment = available(4) && buffer[position + 1] == '!' && buffer[position + 2] == '-'
+				&& buffer[position + 3] == '-';
+		int length = comment ? 4 : 1;
+		byte quote = 0;
+		while (true) {
+			int i = position + length;
+			if (comment) {
+				for (; i < limit; i++) {
+					if (buffer[i] == '>' && i - position >= 6 && buffer[i - 1] == '-' && buffer[i - 2] == '-')
+						return i;
+				}
+			} else {
+				for (; i < limit; i++) {
+					byte b = buffer[i];
+					if (quote != 0) {
+						if (b == quote)
+							quote = 0;
+					} else if (b == '>') {
+						return i;
+					} else if (b == '"' || b == '\'') {
+						quote = b;
+					}
+				}
+			}
+			length = i - position;
+			if (!fill())
+				throw new IOException("Unterminated element at byte " + (bufferOffset + position));
+		}
+	}
+
+	/**
+	 * Makes sure that a number of bytes from position are in the buffer, reading more of the stream as needed.
+	 * @return false if the stream ends before that.
+	 */
+	private boolean available(int count) throws IOException
+	{
+		while (limit - position < count) {
+			if (!fill())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the next occurrence of a byte, reading more of the stream as needed.
+	 * @return The position of the byte, or -1 once the stream ends without it.
+	 */
+	private int find(byte target, int from) throws IOException
+	{
+		int i = from;
+		while (true) {
+			for (; i < limit; i++) {
+				if (buffer[i] == target)
+					return i;
+			}
+			position = limit;
+			if (!fill())
+				return -1;
+			i = position;
+		}
+	}
+
+	/**
+	 * Discards the bytes before position and reads more of the stream after what is left, growing the buffer if it
+	 * is already full of one element.
+	 * @return false if the end of the stream was reached before any byte was read.
+	 */
+	private boolean fill() throws IOException
+	{
+		if (endOfStream)
+			return false;
+		int remaining = limit - position;
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+			bufferOffset += position;
+			position = 0;
+			limit = remaining;
+		} else if (limit == buffer.length) {
+			byte[] larger = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, limit);
+			buffer = larger;
+		}
+		while (limit < buffer.length) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				endOfStream = true;
+				break;
+			}
+			if (read > 0) {
+				limit += read;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static byte[] bytes(String string)
+	{
+		return string.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,393 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads OSM PBF files, the binary format extracts are usually distributed in. A PBF file is a sequence of blobs, each
+ * preceded by a header giving its type and size. The first one is an OSMHeader listing the features needed to read the
+ * file and the rest are OSMData blocks of about eight thousand elements each, usually zlib compressed. Every block has
+ * its own string table that tags refer to by index, and nodes are mostly stored as dense nodes, whose ids and
+ * coordinates are delta coded from the previous node.
+ *
+ * Blobs are read from the file in order, then a batch of them is decompressed and decoded at once on the common
+ * fork/join pool, each block into a MapDataBuilder of its own. The builders are merged in file order at the end, the
+ * same way the chunks of a ParallelOSMParser are, which also resolves the node references of ways.
+ * @author Jonathan Yin
+ *
+ */
+public class PBFReader {
+
+	// Largest header and blob sizes allowed by the format.
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+	private static final String[] SUPPORTED_FEATURES = { "OsmSchema-V0.6", "DenseNodes" };
+
+	private final File file;
+	private final LoadProfile profile;
+	private final int batchSize;
+
+	/**
+	 * Creates a reader for a file.
+	 * @param file The PBF file.
+	 */
+	public PBFReader(File file)
+	{
+		this(file, LoadProfile.EVERYTHING);
+	}
+
+	/**
+	 * Creates a reader for the parts of a file a profile asks for.
+	 * @param file The PBF file.
+	 * @param profile The parts of the file to read.
+	 */
+	public PBFReader(File file, LoadProfile profile)
+	{
+		this.file = file;
+		this.profile = profile;
+		batchSize = ForkJoinPool.getCommonPoolParallelism() * 4;
+	}
+
+	/**
+	 * Reads the whole file.
+	 * @return A builder holding every node and way of the file, in file order.
+	 * @throws IOException If the file can't be read, isn't a PBF file or needs a feature this reader lacks.
+	 */
+	public MapDataBuilder read() throws IOException
+	{
+		TagDictionary dictionary = new TagDictionary();
+		List<MapDataBuilder> blocks = new ArrayList<MapDataBuilder>();
+		List<byte[]> batch = new ArrayList<byte[]>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			while (true) {
+				int headerSize;
+				try {
+					headerSize = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+					throw new IOException("Invalid blob header size " + headerSize + ", this is not a PBF file");
+				byte[] header = new byte[headerSize];
+				in.readFully(header);
+				String type = null;
+				int dataSize = -1;
+				ProtobufReader reader = new ProtobufReader(header, 0, header.length);
+				while (reader.hasNext()) {
+					int field = reader.nextField();
+					if (field == 1)
+						type = reader.readString();
+					else if (field == 3)
+						dataSize = (int) reader.readVarint();
+					else
+						reader.skip();
+				}
+				if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+					throw new IOException("Invalid blob size " + dataSize);
+				byte[] blob = new byte[dataSize];
+				in.readFully(blob);
+				if ("OSMHeader".equals(type)) {
+					checkFeatures(inflate(blob));
+				} else if ("OSMData".equals(type)) {
+					batch.add(blob);
+					if (batch.size() == batchSize) {
+						blocks.addAll(decode(batch, dictionary, profile));
+						batch.clear();
+					}
+				}
+				// Blobs of any other type are skipped, as the format asks.
+			}
+		}
+		blocks.addAll(decode(batch, dictionary, profile));
+		return MapDataBuilder.merge(blocks);
+	}
+
+	/**
+	 * Decompresses and decodes a batch of data blobs in parallel.
+	 */
+	private static List<MapDataBuilder> decode(List<byte[]> batch, TagDictionary dictionary, LoadProfile profile)
+			throws IOException
+	{
+		MapDataBuilder[] builders = new MapDataBuilder[batch.size()];
+		try {
+			IntStream.range(0, batch.size()).parallel().forEach(b -> {
+				MapDataBuilder builder = new MapDataBuilder(new NodeStore(8000, dictionary), true, profile);
+				try {
+					byte[] block = inflate(batch.get(b));
+					decodeBlock(block, builder);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				builders[b] = builder;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return Arrays.asList(builders);
+	}
+
+	/**
+	 * Returns the uncompressed contents of a blob.
+	 */
+	private static byte[] inflate(byte[] blob) throws IOException
+	{
+		ProtobufReader reader = new ProtobufReader(blob, 0, blob.length);
+		byte[] raw = null;
+		byte[] zlib = null;
+		int rawSize = -1;
+		while (reader.hasNext()) {
+			int field = reader.nextField();
+			if (field == 1)
+				raw = reader.readBytes();
+			else if (field == 2)
+				rawSize = (int) reader.readVarint();
+			else if (field == 3)
+				zlib = reader.readBytes();
+			else if (field >= 4 && field <= 7)
+				throw new IOException("Unsupported blob compression (field " + field + "), only zlib is supported");
+			else
+				reader.skip();
+		}
+		if (raw != null)
+			return raw;
+		if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+			throw new IOException("Blob without data");
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(zlib);
+			byte[] block = new byte[rawSize];
+			int length = 0;
+			while (length < rawSize && !inflater.finished()) {
+				int inflated = inflater.inflate(block, length, rawSize - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				length += inflated;
+			}
+			if (length != rawSize)
+				throw new IOException("Blob inflated to " + length + " bytes instead of " + rawSize);
+			return block;
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt zlib data in blob", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Makes sure that everything needed to read the file is supported.
+	 */
+	private static void checkFeatures(byte[] headerBlock) throws IOException
+	{
+		ProtobufReader reader = new ProtobufReader(headerBlock, 0, headerBlock.length);
+		while (reader.hasNext()) {
+			if (reader.nextField() != 4) {
+				reader.skip();
+				continue;
+			}
+			String feature = reader.readString();
+			if (!Arrays.asList(SUPPORTED_FEATURES).contains(feature))
+				throw new IOException("The file needs the unsupported feature " + feature);
+		}
+	}
+
+	/**
+	 * Decodes a PrimitiveBlock into a builder.
+	 */
+	private static void decodeBlock(byte[] block, MapDataBuilder builder) throws IOException
+	{
+		ProtobufReader reader = new ProtobufReader(block, 0, block.length);
+		String[] strings = new String[0];
+		List<ProtobufReader> groups = new ArrayList<ProtobufReader>();
+		Block coordinates = new Block();
+		while (reader.hasNext()) {
+			int field = reader.nextField();
+			if (field == 1) {
+				List<String> table = new ArrayList<String>();
+				ProtobufReader stringTable = reader.readMessage();
+				while (stringTable.hasNext()) {
+					if (stringTable.nextField() == 1)
+						table.add(stringTable.readString());
+					else
+						stringTable.skip();
+				}
+				strings = table.toArray(strings);
+			} else if (field == 2) {
+				// The groups may come before the fields they depend on, so they are decoded last.
+				groups.add(reader.readMessage());
+			} else if (field == 17) {
+				coordinates.granularity = reader.readVarint();
+			} else if (field == 19) {
+				coordinates.latitudeOffset = reader.readVarint();
+			} else if (field == 20) {
+				coordinates.longitudeOffset = reader.readVarint();
+			} else {
+				reader.skip();
+			}
+		}
+		for (ProtobufReader group : groups) {
+			while (group.hasNext()) {
+				int field = group.nextField();
+				if (field == 1)
+					decodeNode(group.readMessage(), strings, coordinates, builder);
+				else if (field == 2)
+					decodeDenseNodes(group.readMessage(), strings, coordinates, builder);
+				else if (field == 3)
+					decodeWay(group.readMessage(), strings, builder);
+				else
+					group.skip();
+			}
+		}
+	}
+
+	private static void decodeNode(ProtobufReader node, String[] strings, Block coordinates, MapDataBuilder builder)
+			throws IOException
+	{
+		long id = 0, latitude = 0, longitude = 0;
+		long[] keys = new long[0], values = new long[0];
+		while (node.hasNext()) {
+			int field = node.nextField();
+			if (field == 1)
+				id = node.readSignedVarint();
+			else if (field == 2)
+				keys = readNumbers(node, false, keys);
+			else if (field == 3)
+				values = readNumbers(node, false, values);
+			else if (field == 8)
+				latitude = node.readSignedVarint();
+			else if (field == 9)
+				longitude = node.readSignedVarint();
+			else
+				node.skip();
+		}
+		builder.startNode(id, coordinates.latitude(latitude), coordinates.longitude(longitude));
+		for (int i = 0; i < Math.min(keys.length, values.length); i++)
+			builder.addTag(string(strings, keys[i]), string(strings, values[i]));
+		builder.endNode();
+	}
+
+	private static void decodeDenseNodes(ProtobufReader dense, String[] strings, Block coordinates,
+			MapDataBuilder builder) throws IOException
+	{
+		long[] ids = new long[0], latitudes = new long[0], longitudes = new long[0], keysValues = new long[0];
+		while (dense.hasNext()) {
+			int field = dense.nextField();
+			if (field == 1)
+				ids = readNumbers(dense, true, ids);
+			else if (field == 8)
+				latitudes = readNumbers(dense, true, latitudes);
+			else if (field == 9)
+				longitudes = readNumbers(dense, true, longitudes);
+			else if (field == 10)
+				keysValues = readNumbers(dense, false, keysValues);
+			else
+				dense.skip();
+		}
+		if (latitudes.length != ids.length || longitudes.length != ids.length)
+			throw new IOException("Dense nodes with " + ids.length + " ids but " + latitudes.length + " latitudes");
+		long id = 0, latitude = 0, longitude = 0;
+		// The tags of all the nodes follow each other, key and value indices ending with a 0 for each node.
+		int tag = 0;
+		for (int i = 0; i < ids.length; i++) {
+			id += ids[i];
+			latitude += latitudes[i];
+			longitude += longitudes[i];
+			builder.startNode(id, coordinates.latitude(latitude), coordinates.longitude(longitude));
+			while (tag < keysValues.length && keysValues[tag] != 0) {
+				if (tag + 1 < keysValues.length)
+					builder.addTag(string(strings, keysValues[tag]), string(strings, keysValues[tag + 1]));
+				tag += 2;
+			}
+			tag++;
+			builder.endNode();
+		}
+	}
+
+	private static void decodeWay(ProtobufReader way, String[] strings, MapDataBuilder builder) throws IOException
+	{
+		long id = 0;
+		long[] keys = new long[0], values = new long[0], refs = new long[0];
+		while (way.hasNext()) {
+			int field = way.nextField();
+			if (field == 1)
+				id = way.readVarint();
+			else if (field == 2)
+				keys = readNumbers(way, false, keys);
+			else if (field == 3)
+				values = readNumbers(way, false, values);
+			else if (field == 8)
+				refs = readNumbers(way, true, refs);
+			else
+				way.skip();
+		}
+		builder.startWay(Long.toString(id));
+		long ref = 0;
+		for (long delta : refs) {
+			ref += delta;
+			builder.addWayNode(ref);
+		}
+		for (int i = 0; i < Math.min(keys.length, values.length); i++)
+			builder.addTag(string(strings, keys[i]), string(strings, values[i]));
+		builder.endWay();
+	}
+
+	/**
+	 * Looks up an index of the string table of a block.
+	 */
+	private static String string(String[] strings, long index) throws IOException
+	{
+		if (index < 0 || index >= strings.length)
+			throw new IOException("Bad string index " + index + " in a table of " + strings.length + " strings");
+		return strings[(int) index];
+	}
+
+	/**
+	 * Reads a repeated number field, packed or not, after the values already read for the same field.
+	 * @param signed true for sint64 fields, which are zig-zag encoded.
+	 */
+	private static long[] readNumbers(ProtobufReader reader, boolean signed, long[] previous) throws IOException
+	{
+		int count = previous.length;
+		if (reader.getWireType() != 2) {
+			long[] numbers = Arrays.copyOf(previous, count + 1);
+			numbers[count] = signed ? reader.readSignedVarint() : reader.readVarint();
+			return numbers;
+		}
+		ProtobufReader packed = reader.readMessage();
+		long[] numbers = Arrays.copyOf(previous, count + 16);
+		while (packed.hasNext()) {
+			if (count == numbers.length)
+				numbers = Arrays.copyOf(numbers, count * 2);
+			numbers[count++] = signed ? packed.readSignedVarint() : packed.readVarint();
+		}
+		return count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
+	}
+
+	/**
+	 * How the coordinates of a block are stored, in units of granularity nanodegrees from an offset.
+	 */
+	private static class Block {
+		long granularity = 100;
+		long latitudeOffset = 0;
+		long longitudeOffset = 0;
+
+		double latitude(long value)
+		{
+			return (latitudeOffset + granularity * value) * 1e-9;
+		}
+
+		double longitude(long value)
+		{
+			return (longitudeOffset + granularity * value) * 1e-9;
+		}
+	}
+}
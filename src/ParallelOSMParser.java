@@ -0,0 +1,206 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Parses a large OSM XML file on several cores. The file is cut into chunks just before the start of a node or way
+ * element, every chunk is parsed by an OSMStreamParser on the common fork/join pool into a builder of its own, and the
+ * builders are merged in file order afterwards. Node references of ways are only resolved by the merge, once the nodes
+ * of every chunk are known. Files too small to be worth splitting are parsed as a single chunk.
+ * @author Jonathan Yin
+ *
+ */
+public class ParallelOSMParser {
+
+	// Chunks are never smaller than this, so that small files don't pay for the merge.
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+	// Number of chunks per worker, more than one so that workers finishing early can pick up more.
+	private static final int CHUNKS_PER_WORKER = 4;
+	private static final int WINDOW_SIZE = 1 << 16;
+
+	private final File file;
+	private final int parallelism;
+	private final LoadProfile profile;
+
+	/**
+	 * Creates a parser for a file that uses every worker of the common fork/join pool.
+	 * @param file The OSM file.
+	 */
+	public ParallelOSMParser(File file)
+	{
+		this(file, ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * Creates a parser for the parts of a file a profile asks for that uses every worker of the common fork/join pool.
+	 * @param file The OSM file.
+	 * @param profile The parts of the file to build.
+	 */
+	public ParallelOSMParser(File file, LoadProfile profile)
+	{
+		this(file, ForkJoinPool.getCommonPoolParallelism(), profile);
+	}
+
+	/**
+	 * Creates a parser for a file.
+	 * @param file The OSM file.
+	 * @param parallelism The number of workers to cut the file for.
+	 */
+	public ParallelOSMParser(File file, int parallelism)
+	{
+		this(file, parallelism, LoadProfile.EVERYTHING);
+	}
+
+	/**
+	 * Creates a parser for the parts of a file a profile asks for.
+	 * @param file The OSM file.
+	 * @param parallelism The number of workers to cut the file for.
+	 * @param profile The parts of the file to build.
+	 */
+	public ParallelOSMParser(File file, int parallelism, LoadProfile profile)
+	{
+		this.file = file;
+		this.parallelism = Math.max(parallelism, 1);
+		this.profile = profile;
+	}
+
+	/**
+	 * Parses the whole file.
+	 * @return A builder holding every node and way of the file, in file order.
+	 * @throws IOException If the file can't be read or isn't well formed.
+	 */
+	public MapDataBuilder parse() throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long[] boundaries = split(channel);
+			int chunkCount = boundaries.length - 1;
+			TagDictionary dictionary = new TagDictionary();
+			MapDataBuilder[] chunks = new MapDataBuilder[chunkCount];
+			try {
+				IntStream.range(0, chunkCount).parallel().forEach(c -> {
+					long start = boundaries[c];
+					long end = boundaries[c + 1];
+					// Roughly a hundred bytes of XML per node.
+					int capacity = (int) Math.min((end - start) / 100, Integer.MAX_VALUE - 8);
+					MapDataBuilder chunk = new MapDataBuilder(new NodeStore(capacity, dictionary), true, profile);
+					try {
+						new OSMStreamParser(new RegionInputStream(channel, start, end), chunk).parse();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					chunks[c] = chunk;
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return MapDataBuilder.merge(Arrays.asList(chunks));
+		}
+	}
+
+	/**
+	 * Picks the offsets the file is cut at, each just before a node or way element.
+	 * @return The start of every chunk followed by the size of the file.
+	 */
+	private long[] split(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		long chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_WORKER));
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		long next = chunkSize;
+		while (next < size) {
+			long boundary = nextElement(channel, next, size);
+			if (boundary >= size)
+				break;
+			boundaries.add(boundary);
+			next = boundary + chunkSize;
+		}
+		boundaries.add(size);
+		long[] offsets = new long[boundaries.size()];
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = boundaries.get(i);
+		return offsets;
+	}
+
+	/**
+	 * Finds the first "<node" or "<way" element at or after an offset. A '<' can't appear unescaped in attribute
+	 * values or text, so this can only be the start of an element.
+	 * @return The offset of the '<', or the size of the file if there is none.
+	 */
+	private static long nextElement(FileChannel channel, long from, long size) throws IOException
+	{
+		// Windows overlap by the length of "<node " so that names cut off at the end of one are found in the next.
+		byte[] window = new byte[WINDOW_SIZE + 6];
+		for (long offset = from; offset < size; offset += WINDOW_SIZE) {
+			ByteBuffer buffer = ByteBuffer.wrap(window);
+			while (buffer.hasRemaining() && offset + buffer.position() < size) {
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					break;
+			}
+			int length = buffer.position();
+			for (int i = 0; i < Math.min(WINDOW_SIZE, length); i++) {
+				if (window[i] == '<' && (startsElement(window, i + 1, length, "node")
+						|| startsElement(window, i + 1, length, "way")))
+					return offset + i;
+			}
+		}
+		return size;
+	}
+
+	private static boolean startsElement(byte[] window, int start, int length, String name)
+	{
+		if (start + name.length() >= length)
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			if (window[start + i] != name.charAt(i))
+				return false;
+		}
+		byte next = window[start + name.length()];
+		return next == ' ' || next == '\t' || next == '\n' || next == '\r' || next == '>' || next == '/';
+	}
+
+	/**
+	 * Reads part of a file through positional reads, which several threads can do on the same channel at once.
+	 */
+	private static class RegionInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		RegionInputStream(FileChannel channel, long start, long end)
+		{
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException
+		{
+			if (position >= end)
+				return -1;
+			length = (int) Math.min(length, end - position);
+			int read = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+			if (read > 0)
+				position += read;
+			return read;
+		}
+	}
+}
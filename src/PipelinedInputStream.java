@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream ahead on a thread of its own, so that producing the bytes, usually decompressing them, overlaps
+ * with whatever consumes them. The reading thread fills blocks and hands them over through a bounded queue, and the
+ * blocks come back through a second queue once they are read, so a fixed number of blocks is reused for the whole
+ * stream and the reading thread waits when the consumer falls behind. Only the reading thread ever touches the source,
+ * it closes it when it stops, so closing this stream never pulls the source out from under a read in progress.
+ * @author Jonathan Yin
+ *
+ */
+public class PipelinedInputStream extends InputStream {
+
+	private final InputStream source;
+	private final BlockingQueue<Block> filled;
+	private final BlockingQueue<Block> empty;
+	private final Thread reader;
+	private Block current;
+	private int position;
+	private boolean ended;
+	private volatile boolean closed;
+
+	/**
+	 * Starts reading a stream ahead.
+	 * @param source The stream to read, closed by the reading thread once it reaches the end, fails or this stream is
+	 *            closed.
+	 * @param blockSize The number of bytes handed over at a time.
+	 * @param blocks The number of blocks, how far the reading thread may get ahead.
+	 */
+	public PipelinedInputStream(InputStream source, int blockSize, int blocks)
+	{
+		this.source = source;
+		filled = new ArrayBlockingQueue<Block>(blocks + 1);
+		empty = new ArrayBlockingQueue<Block>(blocks);
+		for (int i = 0; i < blocks; i++)
+			empty.add(new Block(blockSize));
+		reader = new Thread(this::readAhead, "OSM input reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!fill())
+			return -1;
+		return current.bytes[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		if (length == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int count = Math.min(length, current.length - position);
+		System.arraycopy(current.bytes, position, bytes, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// The reading thread stops at its next block and closes the source itself.
+		closed = true;
+		reader.interrupt();
+	}
+
+	/**
+	 * Makes sure the current block has bytes left, waiting for the next one if needed.
+	 * @return false at the end of the stream.
+	 */
+	private boolean fill() throws IOException
+	{
+		while (current == null || position == current.length) {
+			if (ended)
+				return false;
+			if (current != null)
+				empty.add(current);
+			try {
+				current = filled.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			position = 0;
+			if (current.error != null) {
+				IOException error = current.error;
+				current = null;
+				ended = true;
+				throw error;
+			}
+			if (current.length < 0) {
+				ended = true;
+				current = null;
+			}
+		}
+		return true;
+	}
+
+	private void readAhead()
+	{
+		try {
+			while (!closed) {
+				Block block = empty.take();
+				int length = 0;
+				int read = 0;
+				while (length < block.bytes.length && (read = source.read(block.bytes, length, block.bytes.length - length)) > 0)
+					length += read;
+				if (length > 0) {
+					block.length = length;
+					filled.put(block);
+				} else {
+					// Nothing read, the block goes back for the next try.
+					empty.put(block);
+				}
+				if (read < 0) {
+					filled.put(Block.END);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closed before the end of the stream.
+		} catch (Throwable e) {
+			// Handed to the consumer, which throws it once it reaches this point of the stream. Anything else the
+			// source throws is wrapped too, or the consumer would wait for a block that never comes.
+			Block failure = new Block(0);
+			failure.error = e instanceof IOException ? (IOException) e : new IOException("Reading ahead failed", e);
+			filled.offer(failure);
+		} finally {
+			try {
+				source.close();
+			} catch (IOException e) {
+				// Nobody is left to report it to.
+			}
+		}
+	}
+
+	private static class Block {
+		static final Block END = new Block(0);
+
+		static {
+			END.length = -1;
+		}
+
+		final byte[] bytes;
+		int length;
+		IOException error;
+
+		Block(int size)
+		{
+			bytes = new byte[size];
+		}
+	}
+}
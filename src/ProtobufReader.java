@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the fields of a protocol buffers message out of a byte array, as much of the wire format as OSM PBF files use.
+ * A message is read field by field: nextField returns the number of the next field, after which its value is read
+ * with the method matching its type or skipped. Length delimited fields that hold an embedded message or a packed
+ * list of numbers are read with readMessage, which returns a reader over just those bytes.
+ * @author Jonathan Yin
+ *
+ */
+public class ProtobufReader {
+
+	private static final int VARINT = 0;
+	private static final int FIXED64 = 1;
+	private static final int LENGTH_DELIMITED = 2;
+	private static final int FIXED32 = 5;
+
+	private final byte[] data;
+	private int position;
+	private final int limit;
+	private int wireType;
+
+	/**
+	 * Creates a reader over part of an array.
+	 * @param data The encoded message.
+	 * @param offset The position of the first byte of the message.
+	 * @param length The number of bytes in the message.
+	 */
+	public ProtobufReader(byte[] data, int offset, int length)
+	{
+		this.data = data;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	/**
+	 * Determines whether there is anything left to read.
+	 * @return true if another field or packed value follows.
+	 */
+	public boolean hasNext()
+	{
+		return position < limit;
+	}
+
+	/**
+	 * Reads the key of the next field.
+	 * @return The number of the field.
+	 * @throws IOException If the message ends in the middle of the key.
+	 */
+	public int nextField() throws IOException
+	{
+		long key = readVarint();
+		wireType = (int) (key & 7);
+		return (int) (key >>> 3);
+	}
+
+	/**
+	 * Returns the wire type of the field whose key was read last.
+	 * @return The wire type, 2 for a length delimited field.
+	 */
+	public int getWireType()
+	{
+		return wireType;
+	}
+
+	/**
+	 * Reads a variable length integer, the encoding of int32, int64, uint32, uint64, bool and enum values.
+	 * @return The value.
+	 * @throws IOException If the message ends in the middle of the value.
+	 */
+	public long readVarint() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position >= limit)
+				throw new IOException("Truncated varint");
+			byte b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Reads a zig-zag encoded variable length integer, the encoding of sint32 and sint64 values.
+	 * @return The value.
+	 * @throws IOException If the message ends in the middle of the value.
+	 */
+	public long readSignedVarint() throws IOException
+	{
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads a length delimited field as a message of its own, which is also how packed numbers are read.
+	 * @return A reader over the bytes of the field.
+	 * @throws IOException If the field runs past the end of this message.
+	 */
+	public ProtobufReader readMessage() throws IOException
+	{
+		int length = readLength();
+		ProtobufReader message = new ProtobufReader(data, position, length);
+		position += length;
+		return message;
+	}
+
+	/**
+	 * Reads a length delimited field as bytes.
+	 * @return A copy of the bytes of the field.
+	 * @throws IOException If the field runs past the end of this message.
+	 */
+	public byte[] readBytes() throws IOException
+	{
+		int length = readLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(data, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	/**
+	 * Reads a length delimited field as UTF-8 text.
+	 * @return The string.
+	 * @throws IOException If the field runs past the end of this message.
+	 */
+	public String readString() throws IOException
+	{
+		int length = readLength();
+		String string = new String(data, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return string;
+	}
+
+	/**
+	 * Skips the value of the field whose key was read last.
+	 * @throws IOException If the field has an unknown wire type or runs past the end of this message.
+	 */
+	public void skip() throws IOException
+	{
+		switch (wireType) {
+		case VARINT:
+			readVarint();
+			break;
+		case FIXED64:
+			advance(8);
+			break;
+		case LENGTH_DELIMITED:
+			advance(readLength());
+			break;
+		case FIXED32:
+			advance(4);
+			break;
+		default:
+			throw new IOException("Unsupported wire type " + wireType);
+		}
+	}
+
+	private int readLength() throws IOException
+	{
+		long length = readVarint();
+		if (length < 0 || length > limit - position)
+			throw new IOException("Field length " + length + " runs past the end of the message");
+		return (int) length;
+	}
+
+	private void advance(int count) throws IOException
+	{
+		if (count > limit - position)
+			throw new IOException("Field runs past the end of the message");
+		position += count;
+	}
+}
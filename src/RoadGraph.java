@@ -0,0 +1,198 @@
+import java.util.List;
+
+/**
+ * The road network of the MapDataModel stored in compressed sparse row form. Every node is given an ordinal and the
+ * edges leaving a node are stored contiguously, so the neighbours of a node are found without searching through the
+ * ways. Each pair of consecutive nodes in a way becomes an edge in both directions whose weight is the haversine
+ * distance between the two nodes. The graph is built once each time a file is parsed.
+ * @author Jonathan Yin
+ *
+ */
+public class RoadGraph {
+
+	private NodeStore store;
+	// Edges of node i are stored from offsets[i] up to (but not including) offsets[i + 1].
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+
+	/**
+	 * Builds the road graph out of the nodes and ways of a parsed OSM file.
+	 * @param store All of the nodes parsed, the ordinal of a node in the store is also its ordinal in the graph.
+	 * @param ways All of the ways parsed, consecutive nodes of a way are connected by an edge.
+	 */
+	public RoadGraph(NodeStore store, List<Way> ways)
+	{
+		this.store = store;
+		int size = store.size();
+		// First pass counts the degree of every node, second pass fills in the edges.
+		offsets = new int[size + 1];
+		for (Way way : ways) {
+			for (int i = 0; i < way.size() - 1; i++) {
+				int from = way.getOrdinal(i);
+				int to = way.getOrdinal(i + 1);
+				if (from < 0 || to < 0 || from == to)
+					continue;
+				offsets[from + 1]++;
+				offsets[to + 1]++;
+			}
+		}
+		for (int i = 0; i < size; i++)
+			offsets[i + 1] += offsets[i];
+		targets = new int[offsets[size]];
+		weights = new double[offsets[size]];
+		int[] next = new int[size];
+		System.arraycopy(offsets, 0, next, 0, size);
+		for (Way way : ways) {
+			for (int i = 0; i < way.size() - 1; i++) {
+				int from = way.getOrdinal(i);
+				int to = way.getOrdinal(i + 1);
+				if (from < 0 || to < 0 || from == to)
+					continue;
+				double weight = distance(from, to);
+				targets[next[from]] = to;
+				weights[next[from]++] = weight;
+				targets[next[to]] = from;
+				weights[next[to]++] = weight;
+			}
+		}
+	}
+
+	/**
+	 * Creates a graph over edges read back from a MapSnapshot.
+	 */
+	RoadGraph(NodeStore store, int[] offsets, int[] targets, double[] weights)
+	{
+		this.store = store;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+	}
+
+	/**
+	 * Returns the number of nodes in this graph.
+	 * @return The number of nodes, ordinals range from 0 up to this value.
+	 */
+	public int size()
+	{
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the ordinal of a node in this graph.
+	 * @param node The node to look up.
+	 * @return The ordinal of the node or -1 if the node is not part of this graph.
+	 */
+	public int ordinalOf(Node node)
+	{
+		return node.getNodeStore() == store && node.getOrdinal() < size() ? node.getOrdinal() : -1;
+	}
+
+	/**
+	 * Returns the node with the given ordinal.
+	 * @param ordinal The ordinal of the node.
+	 * @return The node with that ordinal.
+	 */
+	public Node getNode(int ordinal)
+	{
+		return store.getNode(ordinal);
+	}
+
+	/**
+	 * Returns the latitude of a node without creating a node object.
+	 * @param ordinal The ordinal of the node.
+	 * @return The latitude of the node.
+	 */
+	public double getLatitude(int ordinal)
+	{
+		return store.getLatitude(ordinal);
+	}
+
+	/**
+	 * Returns the longitude of a node without creating a node object.
+	 * @param ordinal The ordinal of the node.
+	 * @return The longitude of the node.
+	 */
+	public double getLongitude(int ordinal)
+	{
+		return store.getLongitude(ordinal);
+	}
+
+	/**
+	 * Returns the haversine distance between two nodes.
+	 * @param from The ordinal of the first node.
+	 * @param to The ordinal of the second node.
+	 * @return The straight line distance between the nodes in meters.
+	 */
+	public double distance(int from, int to)
+	{
+		return Node.distance(store.getLatitude(from), store.getLongitude(from), store.getLatitude(to),
+				store.getLongitude(to));
+	}
+
+	/**
+	 * Returns the store holding the nodes of this graph.
+	 * @return The node store.
+	 */
+	public NodeStore getNodeStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Returns the index of the first edge leaving a node.
+	 * @param ordinal The ordinal of the node.
+	 * @return The index of the first edge of the node.
+	 */
+	public int firstEdge(int ordinal)
+	{
+		return offsets[ordinal];
+	}
+
+	/**
+	 * Returns the index one past the last edge leaving a node.
+	 * @param ordinal The ordinal of the node.
+	 * @return The index after the last edge of the node.
+	 */
+	public int endEdge(int ordinal)
+	{
+		return offsets[ordinal + 1];
+	}
+
+	/**
+	 * Returns the ordinal of the node an edge leads to.
+	 * @param edge The index of the edge.
+	 * @return The ordinal of the node at the end of the edge.
+	 */
+	public int target(int edge)
+	{
+		return targets[edge];
+	}
+
+	/**
+	 * Returns the length of an edge in meters.
+	 * @param edge The index of the edge.
+	 * @return The haversine distance between the two ends of the edge.
+	 */
+	public double weight(int edge)
+	{
+		return weights[edge];
+	}
+
+	// The edge arrays, for MapSnapshot to write out.
+
+	int[] getOffsets()
+	{
+		return offsets;
+	}
+
+	int[] getTargets()
+	{
+		return targets;
+	}
+
+	double[] getWeights()
+	{
+		return weights;
+	}
+}
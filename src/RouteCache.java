@@ -0,0 +1,124 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of generated directions keyed by the ordinals of their origin and destination. When the cache is
+ * full the least recently used route is evicted. The cached ways are read only, so they can be handed out any number
+ * of times without a caller changing them for the next.
+ * @author Jonathan Yin
+ *
+ */
+public class RouteCache {
+
+	private int capacity;
+	private final LinkedHashMap<Long, Way> routes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates an empty route cache.
+	 * @param capacity The maximum number of routes kept.
+	 */
+	public RouteCache(int capacity)
+	{
+		this.capacity = capacity;
+		// Access order makes iteration start from the least recently used route.
+		routes = new LinkedHashMap<Long, Way>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Way> eldest)
+			{
+				if (size() > RouteCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Looks up the route between two nodes.
+	 * @param source Ordinal of the starting node.
+	 * @param target Ordinal of the destination node.
+	 * @return The cached read only route, or null if it isn't cached.
+	 */
+	public Way get(int source, int target)
+	{
+		Way route = routes.get(key(source, target));
+		if (route == null)
+			misses++;
+		else
+			hits++;
+		return route;
+	}
+
+	/**
+	 * Caches the route between two nodes, evicting the least recently used route if the cache is full.
+	 * @param source Ordinal of the starting node.
+	 * @param target Ordinal of the destination node.
+	 * @param route The route, which is stored as a read only copy unless it already is read only.
+	 * @return The read only route that was cached.
+	 */
+	public Way put(int source, int target, Way route)
+	{
+		Way readOnly = route.isReadOnly() ? route : route.readOnlyCopy();
+		if (capacity > 0)
+			routes.put(key(source, target), readOnly);
+		return readOnly;
+	}
+
+	/**
+	 * Removes every cached route, used when a new map is loaded. The counters are kept.
+	 */
+	public void clear()
+	{
+		routes.clear();
+	}
+
+	/**
+	 * Changes the maximum number of routes kept, evicting the least recently used ones if there are too many.
+	 * @param capacity The new capacity, 0 disables caching.
+	 */
+	public void setCapacity(int capacity)
+	{
+		this.capacity = capacity;
+		while (routes.size() > capacity) {
+			Long eldest = routes.keySet().iterator().next();
+			routes.remove(eldest);
+			evictions++;
+		}
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public int size()
+	{
+		return routes.size();
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	private static Long key(int source, int target)
+	{
+		return ((long) source << 32) | (target & 0xffffffffL);
+	}
+}
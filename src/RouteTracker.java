@@ -0,0 +1,123 @@
+import java.awt.geom.Line2D;
+import java.util.List;
+
+/**
+ * Follows the progress of a vehicle along a generated route for drive there mode. The route is projected into the
+ * MapDisplay's coordinates once, and the tracker remembers the segment the vehicle was last matched to. Each new
+ * location is first tested against a small window of segments around that cursor, and only if none of them are in
+ * range is the whole route searched. So while the vehicle stays on course every check costs the same however long the
+ * route is, and no objects are created.
+ * @author Jonathan Yin
+ *
+ */
+public class RouteTracker {
+
+	// Segments tested behind and ahead of the cursor before falling back to the whole route.
+	private static final int WINDOW_BEHIND = 2;
+	private static final int WINDOW_AHEAD = 8;
+
+	private final Way route;
+	private final double latitudeOffset;
+	private final double longitudeOffset;
+	// Projected coordinates of the route's nodes.
+	private final double[] xs;
+	private final double[] ys;
+	private int cursor;
+
+	/**
+	 * Projects a route for tracking.
+	 * @param route The route to follow.
+	 * @param center The center node of the map, which the MapDisplay's coordinates are relative to.
+	 */
+	public RouteTracker(Way route, Node center)
+	{
+		this.route = route;
+		latitudeOffset = center.getLatitude();
+		longitudeOffset = center.getLongitude();
+		List<Node> nodes = route.getNodes();
+		xs = new double[nodes.size()];
+		ys = new double[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			xs[i] = projectLongitude(node.getLatitude(), node.getLongitude());
+			ys[i] = projectLatitude(node.getLatitude());
+		}
+		cursor = 0;
+	}
+
+	/**
+	 * Returns the route this tracker follows.
+	 * @return The tracked route.
+	 */
+	public Way getRoute()
+	{
+		return route;
+	}
+
+	/**
+	 * Returns the segment of the route the vehicle was last matched to.
+	 * @return The index of the first node of the segment.
+	 */
+	public int getCursor()
+	{
+		return cursor;
+	}
+
+	/**
+	 * Determines whether a location is within range of the route, moving the cursor to the segment it matched.
+	 * @param latitude The latitude of the location.
+	 * @param longitude The longitude of the location.
+	 * @param range The distance in display units within which the location counts as on the route.
+	 * @return true if some segment of the route is within range of the location.
+	 */
+	public boolean isOnCourse(double latitude, double longitude, double range)
+	{
+		int segments = xs.length - 1;
+		if (segments < 1)
+			return false;
+		double x = projectLongitude(latitude, longitude);
+		double y = projectLatitude(latitude);
+		double rangeSquared = range * range;
+		int windowStart = Math.max(cursor - WINDOW_BEHIND, 0);
+		int windowEnd = Math.min(cursor + WINDOW_AHEAD, segments - 1);
+		if (match(windowStart, windowEnd, x, y, rangeSquared))
+			return true;
+		// The vehicle left the window, either it is off course or it jumped further along the route.
+		if (windowStart > 0 && match(0, windowStart - 1, x, y, rangeSquared))
+			return true;
+		return windowEnd < segments - 1 && match(windowEnd + 1, segments - 1, x, y, rangeSquared);
+	}
+
+	/**
+	 * Looks for the closest segment in [first, last] within range, moving the cursor to it if there is one.
+	 */
+	private boolean match(int first, int last, double x, double y, double rangeSquared)
+	{
+		int closest = -1;
+		double closestDistance = rangeSquared;
+		for (int i = first; i <= last; i++) {
+			double distance = Line2D.ptSegDistSq(xs[i], ys[i], xs[i + 1], ys[i + 1], x, y);
+			if (distance < closestDistance) {
+				closestDistance = distance;
+				closest = i;
+			}
+		}
+		if (closest < 0)
+			return false;
+		cursor = closest;
+		return true;
+	}
+
+	/**
+	 * Same transformation the MapDisplay uses to place nodes, without its panel offset.
+	 */
+	private double projectLongitude(double latitude, double longitude)
+	{
+		return (longitude - longitudeOffset) * MapDisplay.PIXELS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+	}
+
+	private double projectLatitude(double latitude)
+	{
+		return -(latitude - latitudeOffset) * MapDisplay.PIXELS_PER_DEGREE;
+	}
+}
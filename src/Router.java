@@ -0,0 +1,16 @@
+/**
+ * A shortest path search over a RoadGraph. The DirectionsGenerator keeps one router per routing mode and turns the
+ * ordinals it returns into a Way for the MapDisplay.
+ * @author Jonathan Yin
+ *
+ */
+public interface Router {
+
+	/**
+	 * Finds the shortest path between two nodes of the graph.
+	 * @param source Ordinal of the starting node.
+	 * @param target Ordinal of the destination node.
+	 * @return The ordinals of the nodes along the path from source to target, or null if no such path exists.
+	 */
+	public int[] findPath(int source, int target);
+}
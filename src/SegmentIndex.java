@@ -0,0 +1,451 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A static R-tree over every segment (pair of consecutive nodes) of every way, used to snap a location onto the road
+ * it is on rather than onto the nearest node, which can be far away along a long straight way. The tree is packed
+ * with the Sort-Tile-Recursive method: segments are sorted into vertical slices by x, each slice is sorted by y and
+ * cut into leaves, and the leaves are grouped the same way level by level. All boxes and segments are kept in
+ * primitive arrays, in the same plane as the NodeIndex (longitude scaled by the cosine of the middle latitude).
+ * @author Jonathan Yin
+ *
+ */
+public class SegmentIndex {
+
+	// Number of children of every tree node.
+	private static final int NODE_CAPACITY = 16;
+
+	/**
+	 * The point of a road segment closest to a location.
+	 */
+	public static class Match {
+		private final Way way;
+		private final int offset;
+		private final int from;
+		private final int to;
+		private final double fraction;
+		private final double latitude;
+		private final double longitude;
+		private final double distance;
+
+		Match(Way way, int offset, int from, int to, double fraction, double latitude, double longitude,
+				double distance)
+		{
+			this.way = way;
+			this.offset = offset;
+			this.from = from;
+			this.to = to;
+			this.fraction = fraction;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.distance = distance;
+		}
+
+		/**
+		 * Returns the way the matched segment belongs to.
+		 * @return The way of the segment.
+		 */
+		public Way getWay()
+		{
+			return way;
+		}
+
+		/**
+		 * Returns the position of the segment in its way.
+		 * @return The index in the way of the first node of the segment.
+		 */
+		public int getOffset()
+		{
+			return offset;
+		}
+
+		/**
+		 * Returns the ordinal of the first node of the segment.
+		 * @return The road graph ordinal of the segment's start.
+		 */
+		public int getFrom()
+		{
+			return from;
+		}
+
+		/**
+		 * Returns the ordinal of the second node of the segment.
+		 * @return The road graph ordinal of the segment's end.
+		 */
+		public int getTo()
+		{
+			return to;
+		}
+
+		/**
+		 * Returns how far along the segment the matched point is.
+		 * @return 0 at the first node of the segment up to 1 at the second node.
+		 */
+		public double getFraction()
+		{
+			return fraction;
+		}
+
+		public double getLatitude()
+		{
+			return latitude;
+		}
+
+		public double getLongitude()
+		{
+			return longitude;
+		}
+
+		/**
+		 * Returns the distance from the location to the matched point.
+		 * @return The haversine distance in meters.
+		 */
+		public double getDistance()
+		{
+			return distance;
+		}
+	}
+
+	private final RoadGraph graph;
+	private final List<Way> ways;
+	private final double longitudeScale;
+	// Segments in tree order.
+	private int[] segmentWays;
+	private int[] segmentOffsets;
+	private int[] segmentFrom;
+	private int[] segmentTo;
+	private double[] x1, y1, x2, y2;
+	// Tree nodes, leaves first and the root last. Children of a leaf are segments, of any other node tree nodes.
+	private double[] minXs, minYs, maxXs, maxYs;
+	private int[] firstChild, childCounts;
+	private int leafCount;
+
+	/**
+	 * Builds the index over the segments of a list of ways.
+	 * @param graph The road graph the ways' nodes belong to.
+	 * @param ways The ways whose segments are indexed.
+	 */
+	public SegmentIndex(RoadGraph graph, List<Way> ways)
+	{
+		this.graph = graph;
+		this.ways = ways;
+		double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY;
+		int count = 0;
+		for (Way way : ways) {
+			for (int i = 0; i < way.size(); i++) {
+				int ordinal = way.getOrdinal(i);
+				if (ordinal < 0)
+					continue;
+				minLatitude = Math.min(minLatitude, graph.getLatitude(ordinal));
+				maxLatitude = Math.max(maxLatitude, graph.getLatitude(ordinal));
+			}
+			count += Math.max(way.size() - 1, 0);
+		}
+		longitudeScale = count == 0 ? 1 : Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2));
+		segmentWays = new int[count];
+		segmentOffsets = new int[count];
+		segmentFrom = new int[count];
+		segmentTo = new int[count];
+		count = 0;
+		for (int w = 0; w < ways.size(); w++) {
+			Way way = ways.get(w);
+			for (int i = 0; i < way.size() - 1; i++) {
+				int from = way.getOrdinal(i);
+				int to = way.getOrdinal(i + 1);
+				if (from < 0 || to < 0 || from == to)
+					continue;
+				segmentWays[count] = w;
+				segmentOffsets[count] = i;
+				segmentFrom[count] = from;
+				segmentTo[count] = to;
+				count++;
+			}
+		}
+		int[] order = new int[count];
+		double[] centers = new double[count * 2];
+		for (int s = 0; s < count; s++) {
+			order[s] = s;
+			int a = segmentFrom[s];
+			int b = segmentTo[s];
+			centers[s * 2] = (graph.getLongitude(a) + graph.getLongitude(b)) / 2 * longitudeScale;
+			centers[s * 2 + 1] = (graph.getLatitude(a) + graph.getLatitude(b)) / 2;
+		}
+		tile(order, centers, 0, count);
+		segmentWays = permute(segmentWays, order, count);
+		segmentOffsets = permute(segmentOffsets, order, count);
+		segmentFrom = permute(segmentFrom, order, count);
+		segmentTo = permute(segmentTo, order, count);
+		x1 = new double[count];
+		y1 = new double[count];
+		x2 = new double[count];
+		y2 = new double[count];
+		for (int s = 0; s < count; s++) {
+			x1[s] = graph.getLongitude(segmentFrom[s]) * longitudeScale;
+			y1[s] = graph.getLatitude(segmentFrom[s]);
+			x2[s] = graph.getLongitude(segmentTo[s]) * longitudeScale;
+			y2[s] = graph.getLatitude(segmentTo[s]);
+		}
+		buildTree(count);
+	}
+
+	/**
+	 * Finds the point on any road segment closest to a location.
+	 * @param latitude The latitude of the location.
+	 * @param longitude The longitude of the location.
+	 * @return The closest point and the segment it lies on, or null if there are no segments.
+	 */
+	public Match nearest(double latitude, double longitude)
+	{
+		if (minXs.length == 0)
+			return null;
+		double x = longitude * longitudeScale;
+		double y = latitude;
+		// Best segment and squared distance so far, kept in a small array so the recursion can update them.
+		double[] best = { -1, Double.POSITIVE_INFINITY };
+		search(minXs.length - 1, x, y, best);
+		int s = (int) best[0];
+		double fraction = project(s, x, y);
+		double matchX = x1[s] + (x2[s] - x1[s]) * fraction;
+		double matchY = y1[s] + (y2[s] - y1[s]) * fraction;
+		double matchLongitude = matchX / longitudeScale;
+		double distance = Node.distance(latitude, longitude, matchY, matchLongitude);
+		return new Match(ways.get(segmentWays[s]), segmentOffsets[s], segmentFrom[s], segmentTo[s], fraction, matchY,
+				matchLongitude, distance);
+	}
+
+	/**
+	 * Returns the road graph the segments' nodes belong to.
+	 * @return The road graph.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return graph;
+	}
+
+	private void search(int node, double x, double y, double[] best)
+	{
+		int first = firstChild[node];
+		int end = first + childCounts[node];
+		if (node < leafCount) {
+			for (int s = first; s < end; s++) {
+				double fraction = project(s, x, y);
+				double dx = x1[s] + (x2[s] - x1[s]) * fraction - x;
+				double dy = y1[s] + (y2[s] - y1[s]) * fraction - y;
+				double distance = dx * dx + dy * dy;
+				if (distance < best[1]) {
+					best[0] = s;
+					best[1] = distance;
+				}
+			}
+			return;
+		}
+		for (int child = first; child < end; child++) {
+			if (boxDistance(child, x, y) < best[1])
+				search(child, x, y, best);
+		}
+	}
+
+	/**
+	 * Projects a location onto a segment.
+	 * @return How far along the segment the closest point lies, from 0 to 1.
+	 */
+	private double project(int s, double x, double y)
+	{
+		double dx = x2[s] - x1[s];
+		double dy = y2[s] - y1[s];
+		double length = dx * dx + dy * dy;
+		if (length == 0)
+			return 0;
+		double fraction = ((x - x1[s]) * dx + (y - y1[s]) * dy) / length;
+		return fraction < 0 ? 0 : (fraction > 1 ? 1 : fraction);
+	}
+
+	private double boxDistance(int node, double x, double y)
+	{
+		double dx = Math.max(Math.max(minXs[node] - x, x - maxXs[node]), 0);
+		double dy = Math.max(Math.max(minYs[node] - y, y - maxYs[node]), 0);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Sort-Tile-Recursive ordering of the entries [start, end) of order: sort by x, cut into vertical slices, sort each
+	 * slice by y. Consecutive runs of NODE_CAPACITY entries then form compact boxes.
+	 */
+	private static void tile(int[] order, double[] centers, int start, int end)
+	{
+		int count = end - start;
+		if (count <= NODE_CAPACITY)
+			return;
+		sort(order, centers, start, end, 0);
+		int groups = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int slices = (int) Math.ceil(Math.sqrt(groups));
+		int sliceSize = slices == 0 ? count : ((groups + slices - 1) / slices) * NODE_CAPACITY;
+		for (int sliceStart = start; sliceStart < end; sliceStart += sliceSize)
+			sort(order, centers, sliceStart, Math.min(sliceStart + sliceSize, end), 1);
+	}
+
+	/**
+	 * Sorts the entries [start, end) of order by one coordinate of their centers.
+	 */
+	private static void sort(int[] order, double[] centers, int start, int end, int axis)
+	{
+		int count = end - start;
+		double[] keys = new double[count];
+		for (int i = 0; i < count; i++)
+			keys[i] = centers[order[start + i] * 2 + axis];
+		int[] entries = Arrays.copyOfRange(order, start, end);
+		quicksort(keys, entries, 0, count - 1);
+		System.arraycopy(entries, 0, order, start, count);
+	}
+
+	/**
+	 * Sorts keys in the range [left, right] and moves the entries along with them.
+	 */
+	private static void quicksort(double[] keys, int[] entries, int left, int right)
+	{
+		while (left < right) {
+			double pivot = keys[(left + right) >>> 1];
+			int i = left, j = right;
+			while (i <= j) {
+				while (keys[i] < pivot)
+					i++;
+				while (keys[j] > pivot)
+					j--;
+				if (i <= j) {
+					double key = keys[i];
+					keys[i] = keys[j];
+					keys[j] = key;
+					int entry = entries[i];
+					entries[i] = entries[j];
+					entries[j] = entry;
+					i++;
+					j--;
+				}
+			}
+			// Recurse into the smaller side and loop on the larger one to bound the stack depth.
+			if (j - left < right - i) {
+				quicksort(keys, entries, left, j);
+				left = i;
+			} else {
+				quicksort(keys, entries, i, right);
+				right = j;
+			}
+		}
+	}
+
+	private static int[] permute(int[] values, int[] order, int count)
+	{
+		int[] permuted = new int[count];
+		for (int i = 0; i < count; i++)
+			permuted[i] = values[order[i]];
+		return permuted;
+	}
+
+	/**
+	 * Packs the segments into leaves and the leaves into parents until a single root remains.
+	 */
+	private void buildTree(int count)
+	{
+		int capacity = count / NODE_CAPACITY * 2 + 2;
+		minXs = new double[capacity];
+		minYs = new double[capacity];
+		maxXs = new double[capacity];
+		maxYs = new double[capacity];
+		firstChild = new int[capacity];
+		childCounts = new int[capacity];
+		int nodeCount = 0;
+		for (int s = 0; s < count; s += NODE_CAPACITY) {
+			int end = Math.min(s + NODE_CAPACITY, count);
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for (int i = s; i < end; i++) {
+				minX = Math.min(minX, Math.min(x1[i], x2[i]));
+				minY = Math.min(minY, Math.min(y1[i], y2[i]));
+				maxX = Math.max(maxX, Math.max(x1[i], x2[i]));
+				maxY = Math.max(maxY, Math.max(y1[i], y2[i]));
+			}
+			nodeCount = addNode(nodeCount, minX, minY, maxX, maxY, s, end - s);
+		}
+		leafCount = nodeCount;
+		int levelStart = 0;
+		int levelEnd = nodeCount;
+		while (levelEnd - levelStart > 1) {
+			// Order the nodes of this level the same way the segments were ordered before grouping them.
+			int levelSize = levelEnd - levelStart;
+			int[] order = new int[levelSize];
+			double[] centers = new double[levelSize * 2];
+			for (int i = 0; i < levelSize; i++) {
+				order[i] = i;
+				centers[i * 2] = (minXs[levelStart + i] + maxXs[levelStart + i]) / 2;
+				centers[i * 2 + 1] = (minYs[levelStart + i] + maxYs[levelStart + i]) / 2;
+			}
+			tile(order, centers, 0, levelSize);
+			reorderLevel(levelStart, order);
+			for (int n = levelStart; n < levelEnd; n += NODE_CAPACITY) {
+				int end = Math.min(n + NODE_CAPACITY, levelEnd);
+				double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+				double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+				for (int i = n; i < end; i++) {
+					minX = Math.min(minX, minXs[i]);
+					minY = Math.min(minY, minYs[i]);
+					maxX = Math.max(maxX, maxXs[i]);
+					maxY = Math.max(maxY, maxYs[i]);
+				}
+				nodeCount = addNode(nodeCount, minX, minY, maxX, maxY, n, end - n);
+			}
+			levelStart = levelEnd;
+			levelEnd = nodeCount;
+		}
+		minXs = Arrays.copyOf(minXs, nodeCount);
+		minYs = Arrays.copyOf(minYs, nodeCount);
+		maxXs = Arrays.copyOf(maxXs, nodeCount);
+		maxYs = Arrays.copyOf(maxYs, nodeCount);
+		firstChild = Arrays.copyOf(firstChild, nodeCount);
+		childCounts = Arrays.copyOf(childCounts, nodeCount);
+	}
+
+	private int addNode(int nodeCount, double minX, double minY, double maxX, double maxY, int first, int count)
+	{
+		if (nodeCount == minXs.length) {
+			int capacity = nodeCount * 2;
+			minXs = Arrays.copyOf(minXs, capacity);
+			minYs = Arrays.copyOf(minYs, capacity);
+			maxXs = Arrays.copyOf(maxXs, capacity);
+			maxYs = Arrays.copyOf(maxYs, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+		}
+		minXs[nodeCount] = minX;
+		minYs[nodeCount] = minY;
+		maxXs[nodeCount] = maxX;
+		maxYs[nodeCount] = maxY;
+		firstChild[nodeCount] = first;
+		childCounts[nodeCount] = count;
+		return nodeCount + 1;
+	}
+
+	/**
+	 * Rearranges the nodes of one level, which start at levelStart, into the given order.
+	 */
+	private void reorderLevel(int levelStart, int[] order)
+	{
+		int size = order.length;
+		double[] minX = new double[size], minY = new double[size], maxX = new double[size], maxY = new double[size];
+		int[] first = new int[size], counts = new int[size];
+		for (int i = 0; i < size; i++) {
+			int node = levelStart + order[i];
+			minX[i] = minXs[node];
+			minY[i] = minYs[node];
+			maxX[i] = maxXs[node];
+			maxY[i] = maxYs[node];
+			first[i] = firstChild[node];
+			counts[i] = childCounts[node];
+		}
+		System.arraycopy(minX, 0, minXs, levelStart, size);
+		System.arraycopy(minY, 0, minYs, levelStart, size);
+		System.arraycopy(maxX, 0, maxXs, levelStart, size);
+		System.arraycopy(maxY, 0, maxYs, levelStart, size);
+		System.arraycopy(first, 0, firstChild, levelStart, size);
+		System.arraycopy(counts, 0, childCounts, levelStart, size);
+	}
+}
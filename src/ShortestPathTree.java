@@ -0,0 +1,82 @@
+/**
+ * The shortest paths from every node of a RoadGraph to one root node, stored as the next node to travel to from each
+ * node. Since every edge of the road graph goes both ways, a single Dijkstra search from the root builds the tree.
+ * Once built, the route from any node to the root is found by simply following the tree.
+ * @author Jonathan Yin
+ *
+ */
+public class ShortestPathTree {
+
+	private final RoadGraph graph;
+	private final int root;
+	// Next node on the way to the root, -1 for the root itself and for nodes that can't reach it.
+	private final int[] next;
+	private final double[] distances;
+
+	/**
+	 * Builds the tree of shortest paths leading to a root.
+	 * @param graph The road graph.
+	 * @param root The ordinal of the node every path leads to.
+	 */
+	public ShortestPathTree(RoadGraph graph, int root)
+	{
+		this.graph = graph;
+		this.root = root;
+		int size = graph.size();
+		next = new int[size];
+		distances = new double[size];
+		DijkstraRouter router = new DijkstraRouter(graph);
+		router.searchFrom(root);
+		for (int node = 0; node < size; node++) {
+			next[node] = router.getPredecessor(node);
+			distances[node] = router.getDistance(node);
+		}
+	}
+
+	/**
+	 * Returns the road graph this tree was built on.
+	 * @return The road graph.
+	 */
+	public RoadGraph getRoadGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * Returns the node all paths of this tree lead to.
+	 * @return The ordinal of the root.
+	 */
+	public int getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * Returns the length of the shortest path from a node to the root.
+	 * @param ordinal The ordinal of the node.
+	 * @return The distance in meters, or positive infinity if the node can't reach the root.
+	 */
+	public double getDistance(int ordinal)
+	{
+		return distances[ordinal];
+	}
+
+	/**
+	 * Returns the shortest path from a node to the root by following the tree.
+	 * @param ordinal The ordinal of the starting node.
+	 * @return The ordinals along the path from the node to the root, or null if the node can't reach the root.
+	 */
+	public int[] pathFrom(int ordinal)
+	{
+		if (distances[ordinal] == Double.POSITIVE_INFINITY)
+			return null;
+		int length = 0;
+		for (int node = ordinal; node >= 0; node = next[node])
+			length++;
+		int[] path = new int[length];
+		length = 0;
+		for (int node = ordinal; node >= 0; node = next[node])
+			path[length++] = node;
+		return path;
+	}
+}
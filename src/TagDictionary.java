@@ -0,0 +1,106 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the keys and values of tags into int codes. The same few keys (highway, name, source, admin_level) and
+ * values (yes, residential) appear on thousands of elements, so each element stores its tags as a flat array of codes,
+ * key followed by value, and the strings themselves are kept only once here. Elements without tags all share the
+ * NO_TAGS array.
+ *
+ * Several parsers may intern into the same dictionary at once. Lookups don't lock, and a new string is stored before
+ * its code is published, so a code seen by any thread can always be turned back into its string.
+ * @author Jonathan Yin
+ *
+ */
+public class TagDictionary {
+
+	/**
+	 * The tags of every element that has none.
+	 */
+	public static final int[] NO_TAGS = new int[0];
+
+	private final Map<String, Integer> codes;
+	private volatile String[] strings;
+	private int size;
+
+	public TagDictionary()
+	{
+		codes = new ConcurrentHashMap<String, Integer>();
+		strings = new String[64];
+	}
+
+	/**
+	 * Returns the code of a string, adding the string to the dictionary if it isn't in it yet.
+	 * @param string The key or value of a tag.
+	 * @return The code of the string.
+	 */
+	public int intern(String string)
+	{
+		Integer code = codes.get(string);
+		if (code != null)
+			return code;
+		synchronized (this) {
+			code = codes.get(string);
+			if (code != null)
+				return code;
+			String[] current = strings;
+			if (size == current.length) {
+				current = Arrays.copyOf(current, size * 2);
+				strings = current;
+			}
+			current[size] = string;
+			codes.put(string, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * Returns the code of a string without adding it to the dictionary.
+	 * @param string The key or value of a tag.
+	 * @return The code of the string, or -1 if no tag uses it.
+	 */
+	public int lookup(String string)
+	{
+		if (string == null)
+			return -1;
+		Integer code = codes.get(string);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Returns the string of a code.
+	 * @param code A code returned by intern.
+	 * @return The string with that code.
+	 */
+	public String get(int code)
+	{
+		return strings[code];
+	}
+
+	/**
+	 * Returns the number of distinct strings in the dictionary.
+	 * @return The number of codes given out.
+	 */
+	public int size()
+	{
+		return codes.size();
+	}
+
+	/**
+	 * Finds the value of a tag in a flat array of tag codes.
+	 * @param tags The codes of the tags, each key followed by its value.
+	 * @param from The position of the first key to look at.
+	 * @param to The position after the last value to look at.
+	 * @param key The code of the key.
+	 * @return The code of the value, or -1 if the tags don't have the key.
+	 */
+	public static int find(int[] tags, int from, int to, int key)
+	{
+		for (int i = from; i < to; i += 2) {
+			if (tags[i] == key)
+				return tags[i + 1];
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,101 @@
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of rendered map tiles, square images of a fixed size keyed by the zoom they were drawn at and their
+ * column and row in the plane of the display at that zoom. The cache is bounded by the memory of its images rather
+ * than their number, and when it is full the least recently used tiles are evicted.
+ * @author Jonathan Yin
+ *
+ */
+public class TileCache {
+
+	// Width and height of a tile in pixels.
+	public static final int TILE_SIZE = 256;
+	// Bytes taken by one tile, four per pixel.
+	private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+
+	private final long maxBytes;
+	private final LinkedHashMap<TileKey, BufferedImage> tiles;
+
+	/**
+	 * Creates an empty tile cache.
+	 * @param maxBytes The most memory the images of the cached tiles may take.
+	 */
+	public TileCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		// Access order makes iteration start from the least recently used tile.
+		tiles = new LinkedHashMap<TileKey, BufferedImage>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest)
+			{
+				return size() * TILE_BYTES > maxBytes;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a tile.
+	 * @param zoom The zoom the tile is drawn at.
+	 * @param column The column of the tile, its left edge is at column * TILE_SIZE.
+	 * @param row The row of the tile, its top edge is at row * TILE_SIZE.
+	 * @return The cached image of the tile, or null if it isn't cached.
+	 */
+	public BufferedImage get(double zoom, int column, int row)
+	{
+		return tiles.get(new TileKey(zoom, column, row));
+	}
+
+	/**
+	 * Caches a tile, evicting the least recently used tiles if the cache is full.
+	 * @param zoom The zoom the tile is drawn at.
+	 * @param column The column of the tile.
+	 * @param row The row of the tile.
+	 * @param tile The image of the tile, TILE_SIZE pixels square.
+	 */
+	public void put(double zoom, int column, int row, BufferedImage tile)
+	{
+		if (maxBytes >= TILE_BYTES)
+			tiles.put(new TileKey(zoom, column, row), tile);
+	}
+
+	/**
+	 * Removes every cached tile, used when what the tiles show changes.
+	 */
+	public void clear()
+	{
+		tiles.clear();
+	}
+
+	private static final class TileKey {
+
+		private final double zoom;
+		private final int column, row;
+
+		TileKey(double zoom, int column, int row)
+		{
+			this.zoom = zoom;
+			this.column = column;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof TileKey))
+				return false;
+			TileKey key = (TileKey) other;
+			return zoom == key.zoom && column == key.column && row == key.row;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (Double.hashCode(zoom) * 31 + column) * 31 + row;
+		}
+	}
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -9,6 +10,9 @@ import java.util.List;
 public class Way extends OSMData{
 
 	private List<Node> nodes;
+	private boolean readOnly;
+	// Ordinals of the nodes of a parsed way in its NodeStore, null for ways built out of node objects.
+	private int[] ordinals;
 	
 	public Way()
 	{
@@ -22,6 +26,53 @@ public class Way extends OSMData{
 		nodes = new ArrayList<Node>();
 	}
 	
+	/**
+	 * Creates a read only way out of nodes kept in a NodeStore. Only the ordinals of the nodes are stored, node
+	 * objects are created as the list returned by getNodes is read. Tags are interned into the store's dictionary.
+	 * @param id The id of the way.
+	 * @param store The store holding the nodes.
+	 * @param ordinals The ordinals of the nodes in order along the way.
+	 */
+	public Way(String id, NodeStore store, int[] ordinals)
+	{
+		super(id, store.getTagDictionary());
+		this.ordinals = ordinals;
+		nodes = store.getNodes(ordinals);
+		readOnly = true;
+	}
+	
+	/**
+	 * Creates a modifiable copy of another way's nodes, for example to add the current location to a cached route.
+	 * @param other The way to copy.
+	 */
+	public Way(Way other)
+	{
+		super(other.getID());
+		nodes = new ArrayList<Node>(other.nodes);
+	}
+	
+	/**
+	 * Returns a read only copy of this way, whose nodes can no longer be added or removed.
+	 * @return The read only copy.
+	 */
+	public Way readOnlyCopy()
+	{
+		Way copy = new Way(getID());
+		copy.nodes = Collections.unmodifiableList(new ArrayList<Node>(nodes));
+		copy.readOnly = true;
+		return copy;
+	}
+	
+	/**
+	 * Determines whether this way is read only, in which case addNode and addHead throw an
+	 * UnsupportedOperationException.
+	 * @return true if the nodes of this way can't be changed.
+	 */
+	public boolean isReadOnly()
+	{
+		return readOnly;
+	}
+	
 	/**
 	 * Returns the list of nodes that are contained in this way.
 	 * @return List of nodes that comprise this way.
@@ -30,6 +81,26 @@ public class Way extends OSMData{
 	{
 		return nodes;
 	}
+	/**
+	 * Returns the number of nodes in this way.
+	 * @return The number of nodes that comprise this way.
+	 */
+	public int size()
+	{
+		return nodes.size();
+	}
+	
+	/**
+	 * Returns the ordinal of a node of this way in the NodeStore it is kept in, without creating a node object for
+	 * parsed ways.
+	 * @param index The position of the node in this way.
+	 * @return The ordinal of the node, or -1 if the node is not part of a parsed file.
+	 */
+	public int getOrdinal(int index)
+	{
+		return ordinals != null ? ordinals[index] : nodes.get(index).getOrdinal();
+	}
+	
 	/**
 	 * Adds a node to the list of nodes that comprise this way
 	 * @param node Node to be added
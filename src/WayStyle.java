@@ -0,0 +1,98 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+
+/**
+ * The ways the MapDisplay draws differently, each with its color and the width of its stroke at every level of
+ * detail. Ways are classified once from their tags, so painting never has to look at a tag. Styles are declared in the
+ * order they are painted in, the more important ones last so that they stay on top where ways cross.
+ * @author Jonathan Yin
+ *
+ */
+public enum WayStyle {
+
+	// Roads of any other kind and ways without tags, which are assumed to be residential.
+	LOCAL_ROAD(Color.BLACK, 0, 1, 3),
+	SECONDARY_ROAD(Color.BLACK, 1, 3, 5),
+	MAJOR_ROAD(Color.BLACK, 3, 5, 7),
+	WATERWAY(Color.CYAN, 3, 3, 3),
+	LOW_LEVEL_BOUNDARY(Color.YELLOW, 7, 7, 7),
+	MEDIUM_LEVEL_BOUNDARY(Color.GREEN, 7, 7, 7),
+	HIGH_LEVEL_BOUNDARY(Color.RED, 7, 7, 7);
+
+	private static final WayStyle[] VALUES = values();
+
+	private final Color color;
+	// Stroke by level - 1, null on the levels the style isn't drawn at.
+	private final BasicStroke[] strokes;
+
+	private WayStyle(Color color, int... widths)
+	{
+		this.color = color;
+		strokes = new BasicStroke[widths.length];
+		for (int i = 0; i < widths.length; i++)
+			strokes[i] = widths[i] > 0 ? new BasicStroke(widths[i]) : null;
+	}
+
+	public Color getColor()
+	{
+		return color;
+	}
+
+	/**
+	 * Returns the stroke ways of this style are drawn with.
+	 * @param level The level of detail of the display, from 1 to 3.
+	 * @return The stroke, or null if ways of this style aren't drawn at that level.
+	 */
+	public BasicStroke getStroke(int level)
+	{
+		return strokes[level - 1];
+	}
+
+	/**
+	 * Returns the style with an ordinal, for styles stored as codes.
+	 * @param code The ordinal of the style.
+	 * @return The style.
+	 */
+	public static WayStyle fromCode(int code)
+	{
+		return VALUES[code];
+	}
+
+	/**
+	 * Picks the style of a way from its tags. Boundaries come first, then waterways, then roads by their highway tag.
+	 * @param way The way.
+	 * @return The style the way is drawn in.
+	 */
+	public static WayStyle classify(Way way)
+	{
+		String boundaryLevel = way.getTag("admin_level");
+		if (boundaryLevel != null) {
+			int adminLevel;
+			try {
+				adminLevel = Integer.parseInt(boundaryLevel.trim());
+			} catch (NumberFormatException e) {
+				// Values like "4;6" are drawn as the least important boundary.
+				return LOW_LEVEL_BOUNDARY;
+			}
+			if (adminLevel <= 3)
+				return HIGH_LEVEL_BOUNDARY;
+			return adminLevel <= 6 ? MEDIUM_LEVEL_BOUNDARY : LOW_LEVEL_BOUNDARY;
+		}
+		if (way.getTag("waterway") != null)
+			return WATERWAY;
+		String roadType = way.getTag("highway");
+		if (roadType == null)
+			return LOCAL_ROAD;
+		switch (roadType) {
+		case "motorway":
+		case "trunk":
+		case "primary":
+			return MAJOR_ROAD;
+		case "secondary":
+		case "tertiary":
+			return SECONDARY_ROAD;
+		default:
+			return LOCAL_ROAD;
+		}
+	}
+}